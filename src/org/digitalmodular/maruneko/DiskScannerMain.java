@@ -5,29 +5,139 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.sql.SQLException;
+import java.util.Arrays;
 
 import org.digitalmodular.maruneko.database.Database;
+import org.digitalmodular.maruneko.database.Database.OpenMode;
+import org.digitalmodular.maruneko.database.Database.Profile;
 import org.digitalmodular.maruneko.database.FileEntry;
 import org.digitalmodular.maruneko.diskscanner.DiskScanner;
+import org.digitalmodular.maruneko.diskscanner.ScanExclusions;
+import org.digitalmodular.maruneko.diskscanner.ScanLog;
 
 /**
  * @author Mark Jeronimus
  */
 // Created 2022-11-14
 public class DiskScannerMain {
+	/**
+	 * @param args {@code --rescan} to update the existing catalogs instead of recreating them, {@code --resume} to
+	 *             finish interrupted scans of the existing catalogs,
+	 *             {@code --benchmark <dir> [parallelism] [metadataConcurrency]} to only measure how fast a tree can be
+	 *             walked, or {@code --load <log> <catalog>} to import a scan log into the catalog it was scanned for.
+	 *             Add {@code --stats} to a scan or resume to print the timings of each phase at the end.
+	 */
 	public static void main(String... args) throws IOException, SQLException {
-		scan(Paths.get("/"), Paths.get("root.maru"));
-		scan(Paths.get("/home"), Paths.get("home.maru"));
+		boolean rescan = args.length > 0 && args[0].equals("--rescan");
+		boolean resume = args.length > 0 && args[0].equals("--resume");
+		boolean stats  = Arrays.asList(args).contains("--stats");
+
+		if (args.length > 1 && args[0].equals("--benchmark")) {
+			benchmark(Paths.get(args[1]),
+			          args.length > 2 ? Integer.parseInt(args[2]) : 1,
+			          args.length > 3 ? Integer.parseInt(args[3]) : 1);
+			return;
+		}
+
+		if (args.length > 2 && args[0].equals("--load")) {
+			load(Paths.get(args[1]), Paths.get(args[2]));
+			return;
+		}
+
+		if (resume) {
+			resume(Paths.get("root.maru"), stats);
+			resume(Paths.get("home.maru"), stats);
+			return;
+		}
+
+		scan(Paths.get("/"), Paths.get("root.maru"), rescan, stats);
+		scan(Paths.get("/home"), Paths.get("home.maru"), rescan, stats);
+	}
+
+	private static void resume(Path maruFile, boolean stats) throws IOException, SQLException {
+		Database database = new Database(maruFile, OpenMode.UPDATE);
+
+		DiskScanner diskScanner = new DiskScanner(database);
+		diskScanner.setExclusions(ScanExclusions.PSEUDO_FILESYSTEMS);
+		diskScanner.setCollectStatistics(stats);
+
+		int numResumed;
+		database.setProfile(Profile.BULK_LOAD);
+		try {
+			numResumed = diskScanner.resume();
+		} finally {
+			database.setProfile(Profile.DEFAULT);
+		}
+
+		System.out.println("Done: resumed from " + numResumed + " directories");
 	}
 
-	private static void scan(Path start, Path maruFile) throws IOException, SQLException {
-		if (Files.exists(maruFile)) {
-			Files.move(maruFile, Paths.get(maruFile + ".bak"));
+	private static void load(Path log, Path maruFile) throws IOException, SQLException {
+		Database database = new Database(maruFile, OpenMode.UPDATE);
+
+		ScanLog.LoadResult result;
+		database.setProfile(Profile.BULK_LOAD);
+		try {
+			result = ScanLog.load(log, database);
+		} finally {
+			database.setProfile(Profile.DEFAULT);
+		}
+
+		if (result.isComplete()) {
+			System.out.println("Done: loaded " + result.numRecords() + " records");
+		} else {
+			System.out.println("Partially loaded: " + result.problem());
+			System.out.println("The catalog is missing the rest of the scan. Rescan to complete it.");
 		}
+	}
 
+	private static void benchmark(Path start, int parallelism, int metadataConcurrency)
+			throws IOException, SQLException {
+		// Only gets the volumes and the parents of the start
+		Path     tempDir  = Files.createTempDirectory("benchmark");
+		Path     maruFile = tempDir.resolve("benchmark.maru");
 		Database database = new Database(maruFile, true);
 
-		FileEntry firstEntry = new DiskScanner(database).scan(start);
+		try {
+			DiskScanner diskScanner = new DiskScanner(database);
+			diskScanner.setExclusions(ScanExclusions.PSEUDO_FILESYSTEMS);
+			diskScanner.setBenchmark(true);
+			diskScanner.setParallelism(parallelism);
+			diskScanner.setMetadataConcurrency(metadataConcurrency);
+
+			diskScanner.scan(start);
+		} finally {
+			database.close();
+			Files.deleteIfExists(maruFile);
+			Files.deleteIfExists(tempDir);
+		}
+	}
+
+	private static void scan(Path start, Path maruFile, boolean rescan, boolean stats)
+			throws IOException, SQLException {
+		Database database;
+		if (rescan) {
+			database = new Database(maruFile, OpenMode.UPDATE);
+		} else {
+			if (Files.exists(maruFile)) {
+				Files.move(maruFile, Paths.get(maruFile + ".bak"));
+			}
+
+			database = new Database(maruFile, true);
+		}
+
+		DiskScanner diskScanner = new DiskScanner(database);
+		diskScanner.setIncremental(rescan);
+		diskScanner.setExclusions(ScanExclusions.PSEUDO_FILESYSTEMS);
+		diskScanner.setCollectStatistics(stats);
+
+		FileEntry firstEntry;
+		database.setProfile(Profile.BULK_LOAD);
+		try {
+			firstEntry = diskScanner.scan(start);
+		} finally {
+			database.setProfile(Profile.DEFAULT);
+		}
 
 		System.out.println("Done:");
 		System.out.println(firstEntry);
@@ -3,12 +3,9 @@ package org.digitalmodular.maruneko;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.sql.SQLException;
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 
@@ -18,8 +15,6 @@ import org.digitalmodular.utilities.concurrent.SingleWorkerExecutor;
 
 import org.digitalmodular.maruneko.database.Database;
 import org.digitalmodular.maruneko.database.FileEntry;
-import org.digitalmodular.maruneko.database.FileEntryTable;
-import org.digitalmodular.maruneko.database.FileType;
 import org.digitalmodular.maruneko.gui.DatabaseResultsListener;
 import org.sqlite.SQLiteErrorCode;
 import org.sqlite.SQLiteException;
@@ -50,6 +45,7 @@ public class MaruNekoController {
 
 			try {
 				Database database = new Database(file, false);
+				database.setProfile(Database.Profile.READ);
 				openDatabases.put(file, database);
 
 				if (listener != null) {
@@ -144,7 +140,7 @@ public class MaruNekoController {
 				entries = database.fileEntryTable.getByNameRegex(regex);
 
 				for (FileEntry entry : entries) {
-					handleSearchResult(database.fileEntryTable, entry, listener);
+					listener.offerSearchResult(entry, entry.getFullPath());
 				}
 			} catch (SQLiteException ex) {
 				if (ex.getResultCode() == SQLiteErrorCode.SQLITE_INTERRUPT) {
@@ -172,51 +168,22 @@ public class MaruNekoController {
 			ex.printStackTrace();
 		}
 
-		Queue<FileEntry> remaining = new LinkedList<>();
-		remaining.add(entry);
-
 		executor.submit(() -> {
-			while (true) {
-				@Nullable FileEntry parent = remaining.poll();
-				if (parent == null) {
-					break;
+			try {
+				database.fileEntryTable.forEachInSubtree(
+						entry.id(), 0, (child, depth, fullPath) -> listener.offerSearchResult(child, fullPath));
+			} catch (SQLiteException ex) {
+				if (ex.getResultCode() == SQLiteErrorCode.SQLITE_INTERRUPT) {
+					return;
 				}
 
-				try {
-					List<FileEntry> children = database.fileEntryTable.getByParentID(parent.id());
-					for (FileEntry child : children) {
-						handleSearchResult(database.fileEntryTable, child, listener);
-
-						if (child.fileTypeID() == FileType.DIRECTORY.id()) {
-							remaining.add(child);
-						}
-					}
-				} catch (SQLException ex) {
-					ex.printStackTrace();
-				}
+				ex.printStackTrace();
+			} catch (SQLException ex) {
+				ex.printStackTrace();
 			}
 		});
 	}
 
-	private static void handleSearchResult(FileEntryTable fileEntryTable,
-	                                       FileEntry entry,
-	                                       DatabaseResultsListener listener)
-			throws SQLException {
-		List<FileEntry> path = new ArrayList<>(32);
-
-		do {
-			path.add(entry);
-
-			if (entry.parentID() < 1) {
-				break;
-			}
-
-			entry = fileEntryTable.getByID(entry.parentID());
-		} while (entry != null);
-
-		listener.offerSearchResult(path);
-	}
-
 	public static @Nullable FileEntry getParent(FileEntry entry) {
 		try {
 			Database database = entry.database();
@@ -45,7 +45,7 @@ public class SpaceAnalyzerMain extends JPanel {
 
 		try {
 //			FileDataFacade fileData = new FileDataFacade(Paths.get("root.maru"));
-			FileDataFacade fileData = new FileDataFacade(Paths.get("home.maru"));
+			FileDataFacade fileData = new FileDataFacade(Paths.get("home.maru"), true);
 
 			visualizer = new PieChartPanel(fileData);
 			Rectangle bounds = GraphicsEnvironment.getLocalGraphicsEnvironment().getMaximumWindowBounds();
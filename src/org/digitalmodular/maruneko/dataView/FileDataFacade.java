@@ -17,25 +17,45 @@ import org.digitalmodular.maruneko.fileapi.FileMapBuilder;
  */
 // Created 2022-11-23
 public class FileDataFacade {
-	private final Database database;
-	private final FileNode root;
+	private final Database       database;
+	private final FileMapBuilder fileMapBuilder;
+	private final FileNode       root;
 
+	/**
+	 * Loads the whole tree.
+	 */
 	public FileDataFacade(Path databaseFile) throws IOException, SQLException {
+		this(databaseFile, false);
+	}
+
+	/**
+	 * @param summarized When {@code true}, only the root is loaded, with the totals the catalog has for it, and the
+	 *                   levels below are loaded as they're needed by {@link #expand(FileNode, int)}. Catalogs without
+	 *                   totals are loaded completely anyway.
+	 */
+	public FileDataFacade(Path databaseFile, boolean summarized) throws IOException, SQLException {
 		try {
 			database = new Database(databaseFile, false);
 		} catch (IOException | SQLException ex) {
 			throw new IOException(ex);
 		}
 
-		FileMapBuilder fileMapBuilder = new FileMapBuilder(database);
-		root = fileMapBuilder.buildFileMap();
+		fileMapBuilder = new FileMapBuilder(database);
+		root           = summarized ? fileMapBuilder.buildFileMap(0) : fileMapBuilder.buildFileMap();
 	}
 
 	public FileNode getRoot() {
 		return root;
 	}
 
-	public @Nullable FileNode getFile(Path path) {
+	/**
+	 * Makes sure the levels down to {@code depth} below a node are loaded.
+	 */
+	public void expand(FileNode node, int depth) throws SQLException {
+		fileMapBuilder.expand(node, depth);
+	}
+
+	public @Nullable FileNode getFile(Path path) throws SQLException {
 		@Nullable Path parent = path.getParent();
 
 		if (parent == null) {
@@ -50,6 +70,8 @@ public class FileDataFacade {
 				return null;
 			}
 
+			expand(parentNode, 1);
+
 			@Nullable FileNode node = getFileNode(parentNode.getChildren(), path.getFileName().toString());
 			if (node != null) {
 				System.out.println(node.toPathString());
@@ -68,6 +90,9 @@ public class FileDataFacade {
 		return null;
 	}
 
+	/**
+	 * Searches the loaded part of the tree.
+	 */
 	public List<FileNode> findNodes(String keyword) {
 		String normalized = StringUtilities.collateASCII(keyword).toLowerCase();
 
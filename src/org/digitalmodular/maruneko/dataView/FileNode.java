@@ -10,7 +10,9 @@ import java.util.stream.Stream;
 import org.jetbrains.annotations.Nullable;
 
 import static org.digitalmodular.utilities.ValidatorUtilities.requireNonNull;
+import static org.digitalmodular.utilities.ValidatorUtilities.requireThat;
 
+import org.digitalmodular.maruneko.database.DirectoryAggregate;
 import org.digitalmodular.maruneko.database.FileEntry;
 import org.digitalmodular.maruneko.database.Volume;
 
@@ -88,6 +90,13 @@ public class FileNode {
 	private long fileSizeOfTree       = 0;
 	private long fileSizeOnDiskOfTree = 0;
 
+	/**
+	 * Whether the totals of the tree were read from the catalog. The children are then only there to be shown, and
+	 * may be fewer than the totals count.
+	 */
+	private boolean summarized     = false;
+	private boolean childrenLoaded = true;
+
 	public FileNode(Volume volume, FileEntry fileEntry, @Nullable FileNode parent) {
 		this.volume    = requireNonNull(volume, "volume");
 		this.fileEntry = requireNonNull(fileEntry, "fileEntry");
@@ -99,9 +108,31 @@ public class FileNode {
 		fileSizeOnDiskOfTree = fileSizeOnDisk;
 	}
 
+	/**
+	 * Creates a node of which the totals of the tree are already known, so its children don't add to them.
+	 */
+	public FileNode(Volume volume, FileEntry fileEntry, @Nullable FileNode parent, DirectoryAggregate aggregate) {
+		this(volume, fileEntry, parent);
+		requireNonNull(aggregate, "aggregate");
+		requireThat(aggregate.id() == fileEntry.id(),
+		            () -> "'aggregate' is of another entry: " + aggregate.id() + " != " + fileEntry.id());
+
+		treeSize             = aggregate.treeSize();
+		largestSubtree       = aggregate.largestSubtree();
+		fileSizeOfTree       = aggregate.fileSizeOfTree();
+		fileSizeOnDiskOfTree = aggregate.fileSizeOnDiskOfTree();
+		summarized           = true;
+		childrenLoaded       = false;
+	}
+
 	public void addChild(FileNode child) {
 		requireNonNull(child, "child");
 		children.add(child);
+		childrenLoaded = true;
+
+		if (summarized) {
+			return;
+		}
 
 		treeSize++;
 		largestSubtree = Math.max(largestSubtree, children.size());
@@ -136,6 +167,10 @@ public class FileNode {
 
 	@SuppressWarnings("TailRecursion") // Let each object modify itself (hence more logical with recursion)
 	private void addSizes(int childLargestSubtree, long fileSize, long fileSizeOnDisk) {
+		if (summarized) {
+			return;
+		}
+
 		treeSize++;
 		largestSubtree = Math.max(largestSubtree, childLargestSubtree);
 		fileSizeOfTree += fileSize;
@@ -166,6 +201,20 @@ public class FileNode {
 		return Collections.unmodifiableList(children);
 	}
 
+	/**
+	 * @return whether the totals of the tree were read from the catalog instead of counted from the children.
+	 */
+	public boolean isSummarized() {
+		return summarized;
+	}
+
+	/**
+	 * @return whether this node's totals count children that aren't loaded yet.
+	 */
+	public boolean hasUnloadedChildren() {
+		return !childrenLoaded && treeSize > 1;
+	}
+
 	public int getNumChildren() {
 		return children.size();
 	}
@@ -5,6 +5,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -12,6 +13,7 @@ import org.jetbrains.annotations.Nullable;
 
 import static org.digitalmodular.utilities.CollectionValidatorUtilities.requireValuesNonNull;
 import static org.digitalmodular.utilities.StringValidatorUtilities.requireStringLengthAtLeast;
+import static org.digitalmodular.utilities.ValidatorUtilities.requireAtLeast;
 import static org.digitalmodular.utilities.ValidatorUtilities.requireNonNull;
 
 /**
@@ -20,11 +22,15 @@ import static org.digitalmodular.utilities.ValidatorUtilities.requireNonNull;
  */
 // Created 2022-02-02
 public abstract class AbstractTable<V> {
+	public static final int DEFAULT_BATCH_SIZE = 1024;
+
 	private final Connection connection;
 	private final String     tableName;
 
 	private final PreparedStatement selectAllStatement;
 
+	private int batchSize = DEFAULT_BATCH_SIZE;
+
 	protected AbstractTable(Connection connection, String tableName) throws SQLException {
 		this.connection = requireNonNull(connection, "connection");
 		this.tableName  = requireStringLengthAtLeast(1, tableName, "tableName");
@@ -33,6 +39,43 @@ public abstract class AbstractTable<V> {
 		selectAllStatement.setQueryTimeout(Database.QUERY_TIMEOUT);
 	}
 
+	/**
+	 * Adds a column to a table created by an older version, where {@code CREATE TABLE IF NOT EXISTS} left it out.
+	 * New columns are only ever added at the end, so column indices stay the same for old and new catalogs.
+	 */
+	protected static void addColumnIfMissing(Connection connection,
+	                                         String tableName,
+	                                         String columnName,
+	                                         String columnDefinition)
+			throws SQLException {
+		if (hasColumn(connection, tableName, columnName)) {
+			return;
+		}
+
+		try (Statement statement = connection.createStatement()) {
+			statement.setQueryTimeout(Database.QUERY_TIMEOUT);
+
+			statement.executeUpdate("ALTER TABLE " + tableName + " ADD COLUMN " + columnName + ' ' + columnDefinition);
+		}
+	}
+
+	protected static boolean hasColumn(Connection connection, String tableName, String columnName)
+			throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			statement.setQueryTimeout(Database.QUERY_TIMEOUT);
+
+			try (ResultSet resultSet = statement.executeQuery("PRAGMA table_info(" + tableName + ')')) {
+				while (resultSet.next()) {
+					if (resultSet.getString("name").equals(columnName)) {
+						return true;
+					}
+				}
+			}
+		}
+
+		return false;
+	}
+
 	protected Connection getConnection() {
 		return connection;
 	}
@@ -41,14 +84,35 @@ public abstract class AbstractTable<V> {
 		return tableName;
 	}
 
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Sets the maximum number of rows {@link #addValues(Iterable)} sends to the database in one go, for tables that
+	 * support batching.
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = requireAtLeast(1, batchSize, "batchSize");
+	}
+
 	protected abstract V constructValue(ResultSet resultSet) throws SQLException;
 
-	protected void addValues(Iterable<V> values) throws SQLException {
+	/**
+	 * Adds multiple values. Subclasses may override this to use JDBC batches.
+	 *
+	 * @return The values as added, in the same order, with any missing IDs assigned.
+	 */
+	public List<V> addValues(Iterable<V> values) throws SQLException {
 		requireValuesNonNull(values, "values");
 
+		List<V> added = new ArrayList<>(batchSize);
+
 		for (V value : values) {
-			addValue(value);
+			added.add(addValue(value));
 		}
+
+		return added;
 	}
 
 	public List<V> getAll() throws SQLException {
@@ -6,15 +6,20 @@ import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.regex.Pattern;
 
+import org.jetbrains.annotations.Nullable;
+
 import org.digitalmodular.utilities.FileUtilities;
 import static org.digitalmodular.utilities.ValidatorUtilities.requireNonNull;
 
 import org.sqlite.Function;
 import org.sqlite.SQLiteConfig;
 import org.sqlite.SQLiteDataSource;
+import org.sqlite.SQLiteOpenMode;
 
 /**
  * @author Zom-G
@@ -24,31 +29,126 @@ import org.sqlite.SQLiteDataSource;
 public class Database {
 	public static final int QUERY_TIMEOUT = 1;
 
+	/**
+	 * @author Mark Jeronimus
+	 */
+	// Created 2026-10-17
+	public enum OpenMode {
+		/**
+		 * Opens an existing catalog.
+		 */
+		READ,
+		/**
+		 * Moves an existing catalog to a backup and starts a new one.
+		 */
+		RECREATE,
+		/**
+		 * Opens an existing catalog (or starts a new one) to be brought up to date by a rescan.
+		 */
+		UPDATE,
+		/**
+		 * Opens an existing catalog that nothing writes to anymore, such as one of an offline disk or one on a
+		 * read-only medium. SQLite then skips all locking and change detection. The catalog must already have the
+		 * current layout, as it can't be upgraded, and it's opened with the {@link Profile#READ READ} profile.
+		 */
+		READ_IMMUTABLE
+	}
+
+	/**
+	 * How the connection trades durability for speed. The profile only changes by {@link #setProfile(Profile)}.
+	 *
+	 * @author Mark Jeronimus
+	 */
+	// Created 2026-10-17
+	public enum Profile {
+		/**
+		 * Rollback journal, every commit synced, and foreign keys enforced.
+		 */
+		DEFAULT("PRAGMA query_only=0",
+		        "PRAGMA synchronous=FULL",
+		        "PRAGMA cache_size=-2000",
+		        "PRAGMA temp_store=DEFAULT",
+		        "PRAGMA mmap_size=0",
+		        "PRAGMA foreign_keys=ON"),
+		/**
+		 * For filling a catalog by a scan. Commits go to a write-ahead log and aren't synced. A crash of the program
+		 * loses nothing that was committed, but after a crash of the system or a power loss the catalog may be
+		 * corrupt and need a rescan. Foreign keys aren't enforced while loading, but are checked when leaving this
+		 * profile.
+		 */
+		BULK_LOAD("PRAGMA query_only=0",
+		          "PRAGMA journal_mode=WAL",
+		          "PRAGMA synchronous=OFF",
+		          "PRAGMA cache_size=-262144",
+		          "PRAGMA temp_store=MEMORY",
+		          "PRAGMA mmap_size=0",
+		          "PRAGMA foreign_keys=OFF"),
+		/**
+		 * For browsing a catalog. Pages are read through a memory map, and any attempt to write fails.
+		 */
+		READ("PRAGMA synchronous=FULL",
+		     "PRAGMA cache_size=-65536",
+		     "PRAGMA temp_store=MEMORY",
+		     "PRAGMA mmap_size=1073741824",
+		     "PRAGMA foreign_keys=ON",
+		     "PRAGMA query_only=1");
+
+		private final String[] pragmas;
+
+		Profile(String... pragmas) {
+			this.pragmas = pragmas;
+		}
+	}
+
 	private final Path       file;
 	private final Connection connection;
 
+	private Profile profile = Profile.DEFAULT;
+
 	public final VolumeTable    volumeTable;
 	public final FileTypeTable  fileTypeTable;
+	public final FileNameTable  fileNameTable;
 	public final FileEntryTable fileEntryTable;
 
+	public final DirectoryPathTable      directoryPathTable;
+	public final DirectoryAggregateTable directoryAggregateTable;
+
+	public final PendingDirectoryTable pendingDirectoryTable;
+
 	public Database(Path file, boolean forWriting) throws IOException, SQLException {
+		this(file, forWriting ? OpenMode.RECREATE : OpenMode.READ);
+	}
+
+	public Database(Path file, OpenMode openMode) throws IOException, SQLException {
 		this.file = requireNonNull(file, "file");
+		requireNonNull(openMode, "openMode");
 		System.out.println("Opening Database " + file);
 
-		if (forWriting) {
+		if (openMode == OpenMode.RECREATE) {
 			cycleBackups(file);
-		} else if (!Files.exists(file)) {
+		} else if (openMode != OpenMode.UPDATE && !Files.exists(file)) {
 			throw new IOException("File doesn't exist: " + file);
 		}
 
 		SQLiteConfig config = new SQLiteConfig();
 		config.enforceForeignKeys(true);
 		SQLiteDataSource dataSource = new SQLiteDataSource(config);
-		dataSource.setUrl("jdbc:sqlite:" + file);
+		if (openMode == OpenMode.READ_IMMUTABLE) {
+			config.setReadOnly(true);
+			config.setOpenMode(SQLiteOpenMode.OPEN_URI);
+			dataSource.setUrl("jdbc:sqlite:" + file.toAbsolutePath().toUri() + "?immutable=1");
+		} else {
+			dataSource.setUrl("jdbc:sqlite:" + file);
+		}
+
 		connection = dataSource.getConnection();
 		connection.setAutoCommit(false);
 
 		Function.create(connection, "REGEXP", new Function() {
+			// A query passes the same expression for every row
+			private @Nullable String  lastExpression = null;
+			private @Nullable Pattern lastPattern    = null;
+
 			@Override
 			protected void xFunc() throws SQLException {
 				String expression = value_text(0);
@@ -57,22 +157,69 @@ public class Database {
 					value = "";
 				}
 
-				Pattern pattern = Pattern.compile(expression);
+				@Nullable Pattern pattern = lastPattern;
+				if (pattern == null || !expression.equals(lastExpression)) {
+					pattern = Pattern.compile(expression);
+					lastExpression = expression;
+					lastPattern = pattern;
+				}
+
 				result(pattern.matcher(value.toLowerCase()).find() ? 1 : 0);
 			}
 		});
 
-		try {
-			VolumeTable.createTable(connection);
-			FileTypeTable.createTable(connection);
-			FileEntryTable.createTable(connection);
+		if (openMode != OpenMode.READ_IMMUTABLE) {
+			createTables();
+		}
 
+		try {
 			volumeTable    = new VolumeTable(connection);
 			fileTypeTable  = new FileTypeTable(connection);
-			fileEntryTable = new FileEntryTable(this, connection, fileTypeTable);
+			fileNameTable  = new FileNameTable(connection);
+			fileEntryTable = new FileEntryTable(this, connection, fileTypeTable, fileNameTable);
+
+			directoryPathTable      = new DirectoryPathTable(connection);
+			directoryAggregateTable = new DirectoryAggregateTable(connection);
+
+			pendingDirectoryTable = new PendingDirectoryTable(connection);
 		} finally {
 			connection.commit();
 		}
+
+		if (openMode == OpenMode.READ_IMMUTABLE) {
+			setProfile(Profile.READ);
+		}
+	}
+
+	/**
+	 * Creates the tables, or upgrades those of an older version. Upgrading can replace a table, which can't be done
+	 * while foreign keys are enforced, and it's all or nothing.
+	 */
+	private void createTables() throws SQLException {
+		connection.setAutoCommit(true);
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("PRAGMA foreign_keys=OFF");
+			connection.setAutoCommit(false);
+
+			try {
+				VolumeTable.createTable(connection);
+				FileTypeTable.createTable(connection);
+				FileNameTable.createTable(connection);
+				FileEntryTable.createTable(connection);
+				PendingDirectoryTable.createTable(connection);
+				DirectoryPathTable.createTable(connection);
+				DirectoryAggregateTable.createTable(connection);
+				connection.commit();
+			} catch (SQLException ex) {
+				connection.rollback();
+				throw ex;
+			}
+
+			connection.setAutoCommit(true);
+			statement.execute("PRAGMA foreign_keys=ON");
+		} finally {
+			connection.setAutoCommit(false);
+		}
 	}
 
 	private static void cycleBackups(Path file) throws IOException {
@@ -98,10 +245,67 @@ public class Database {
 		}
 	}
 
+	public Profile getProfile() {
+		return profile;
+	}
+
+	/**
+	 * Commits, and switches the connection to another profile.
+	 * <p>
+	 * When leaving {@link Profile#BULK_LOAD BULK_LOAD}, the foreign keys that weren't enforced are checked, and the
+	 * write-ahead log is moved into the catalog and removed, so the catalog is durable and self-contained again.
+	 *
+	 * @throws SQLException when the bulk load left rows that refer to missing rows. The catalog is still made durable
+	 *                      and switched to the new profile first, so it's left in a usable state.
+	 */
+	public void setProfile(Profile profile) throws SQLException {
+		requireNonNull(profile, "profile");
+		if (profile == this.profile) {
+			return;
+		}
+
+		connection.commit();
+
+		// Most of these PRAGMAs are ignored or refused inside a transaction
+		connection.setAutoCommit(true);
+		try (Statement statement = connection.createStatement()) {
+			@Nullable String violation = null;
+			if (this.profile == Profile.BULK_LOAD) {
+				try (ResultSet resultSet = statement.executeQuery("PRAGMA foreign_key_check")) {
+					if (resultSet.next()) {
+						violation = "Foreign key violation in " + resultSet.getString("table") +
+						            " row " + resultSet.getLong("rowid") + " after bulk load: " + file;
+					}
+				}
+
+				statement.execute("PRAGMA wal_checkpoint(TRUNCATE)");
+				statement.execute("PRAGMA journal_mode=DELETE");
+				statement.execute("PRAGMA synchronous=FULL");
+			}
+
+			for (String pragma : profile.pragmas) {
+				statement.execute(pragma);
+			}
+
+			this.profile = profile;
+
+			if (violation != null) {
+				throw new SQLException(violation);
+			}
+		} finally {
+			connection.setAutoCommit(false);
+		}
+	}
+
 	public void commit() throws SQLException {
 		connection.commit();
 	}
 
+	public void rollback() throws SQLException {
+		connection.rollback();
+		fileNameTable.clearCache();
+	}
+
 	public void close() throws SQLException {
 		connection.close();
 	}
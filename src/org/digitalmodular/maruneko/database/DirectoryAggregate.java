@@ -0,0 +1,29 @@
+package org.digitalmodular.maruneko.database;
+
+import static org.digitalmodular.utilities.ValidatorUtilities.requireAtLeast;
+
+/**
+ * The totals of a directory and everything below it, as {@link DirectoryAggregateTable} stores them. Only present
+ * entries are counted.
+ *
+ * @param id                   The ID of the directory's entry
+ * @param treeSize             The number of entries in the tree, including the directory itself
+ * @param largestSubtree       The largest number of children of any directory in the tree, or 1 when none has more
+ * @param fileSizeOfTree       The sum of the sizes of the entries in the tree
+ * @param fileSizeOnDiskOfTree The same, with each size rounded up to the block size of its volume
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+public record DirectoryAggregate(int id,
+                                 int treeSize,
+                                 int largestSubtree,
+                                 long fileSizeOfTree,
+                                 long fileSizeOnDiskOfTree) {
+	public DirectoryAggregate {
+		requireAtLeast(1, id, "id");
+		requireAtLeast(1, treeSize, "treeSize");
+		requireAtLeast(1, largestSubtree, "largestSubtree");
+		requireAtLeast(0, fileSizeOfTree, "fileSizeOfTree");
+		requireAtLeast(0, fileSizeOnDiskOfTree, "fileSizeOnDiskOfTree");
+	}
+}
@@ -0,0 +1,139 @@
+package org.digitalmodular.maruneko.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.jetbrains.annotations.Nullable;
+
+import static org.digitalmodular.utilities.ValidatorUtilities.requireAtLeast;
+import static org.digitalmodular.utilities.ValidatorUtilities.requireNonNull;
+
+/**
+ * The totals of every directory tree, so the top levels of a catalog can be shown with their sizes without reading
+ * everything below them. Only directories are stored.
+ * <p>
+ * Unlike {@link DirectoryPathTable}, this table isn't kept up to date as entries are written, as every write would
+ * have to update all ancestors. Instead, {@link #rebuild()} computes it all again once a scan is done. Nothing else
+ * writes it.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+public final class DirectoryAggregateTable {
+	public static final String TABLE_NAME = "DirectoryAggregate";
+
+	/**
+	 * The totals of the present directories at one depth, from the totals of those one level deeper. The depths are
+	 * forced to drive the join, as each level is only a small part of the catalog.
+	 */
+	private static final String INSERT_LEVEL =
+			"INSERT INTO DirectoryAggregate SELECT dir.id, " +
+			"1 + COUNT(child.id) + IFNULL(SUM(agg.treeSize - 1), 0), " +
+			"MAX(COUNT(child.id), IFNULL(MAX(agg.largestSubtree), 1), 1), " +
+			"dir.size + IFNULL(SUM(IFNULL(agg.fileSizeOfTree, child.size)), 0), " +
+			"((dir.size + dirVolume.blockSize - 1) & -dirVolume.blockSize) + IFNULL(SUM(IFNULL(" +
+			"agg.fileSizeOnDiskOfTree, (child.size + childVolume.blockSize - 1) & -childVolume.blockSize)), 0) " +
+			"FROM temp.DirectoryDepth AS depth " +
+			"CROSS JOIN FileEntry AS dir ON dir.id=depth.id " +
+			"JOIN Volume AS dirVolume ON dirVolume.id=dir.volumeID " +
+			"LEFT JOIN FileEntry AS child ON child.parentID=dir.id AND child.deletedTimestamp=0 " +
+			"LEFT JOIN Volume AS childVolume ON childVolume.id=child.volumeID " +
+			"LEFT JOIN DirectoryAggregate AS agg ON agg.id=child.id " +
+			"WHERE depth.depth=? GROUP BY depth.id";
+
+	private final Connection        connection;
+	private final PreparedStatement selectStatementID;
+
+	public static void createTable(Connection connection) throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			statement.setQueryTimeout(Database.QUERY_TIMEOUT);
+
+			statement.executeUpdate("CREATE TABLE IF NOT EXISTS DirectoryAggregate (" +
+			                        "id                   INTEGER NOT NULL PRIMARY KEY," +
+			                        "treeSize             INTEGER NOT NULL CHECK(treeSize > 0)," +
+			                        "largestSubtree       INTEGER NOT NULL CHECK(largestSubtree > 0)," +
+			                        "fileSizeOfTree       INTEGER NOT NULL CHECK(fileSizeOfTree >= 0)," +
+			                        "fileSizeOnDiskOfTree INTEGER NOT NULL CHECK(fileSizeOnDiskOfTree >= 0)," +
+			                        "FOREIGN KEY (id) REFERENCES " + FileEntryTable.TABLE_NAME +
+			                        "(id) ON DELETE CASCADE)");
+		}
+	}
+
+	public DirectoryAggregateTable(Connection connection) throws SQLException {
+		this.connection = requireNonNull(connection, "connection");
+
+		selectStatementID = connection.prepareStatement("SELECT * FROM DirectoryAggregate WHERE id=?");
+		selectStatementID.setQueryTimeout(Database.QUERY_TIMEOUT);
+	}
+
+	/**
+	 * @return the totals of a directory, or {@code null} when it isn't a present directory or they weren't computed
+	 * since it was added.
+	 */
+	public @Nullable DirectoryAggregate getByID(int id) throws SQLException {
+		requireAtLeast(1, id, "id");
+
+		selectStatementID.setObject(1, id);
+
+		try (ResultSet resultSet = selectStatementID.executeQuery()) {
+			if (!resultSet.next()) {
+				return null;
+			}
+
+			return new DirectoryAggregate(resultSet.getInt("id"),
+			                              resultSet.getInt("treeSize"),
+			                              resultSet.getInt("largestSubtree"),
+			                              resultSet.getLong("fileSizeOfTree"),
+			                              resultSet.getLong("fileSizeOnDiskOfTree"));
+		} finally {
+			selectStatementID.clearParameters();
+		}
+	}
+
+	/**
+	 * Computes the totals of all present directories again, bottom-up: first the deepest directories, then each level
+	 * above from the one below it, one statement per level. This takes a pass over the catalog, so it's done once at
+	 * the end of a scan and not per entry.
+	 * <p>
+	 * Doesn't commit.
+	 */
+	public void rebuild() throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			statement.setQueryTimeout(0);
+
+			statement.executeUpdate("DELETE FROM DirectoryAggregate");
+
+			statement.executeUpdate("DROP TABLE IF EXISTS temp.DirectoryDepth");
+			statement.executeUpdate("CREATE TEMP TABLE DirectoryDepth (" +
+			                        "id    INTEGER NOT NULL PRIMARY KEY," +
+			                        "depth INTEGER NOT NULL)");
+			statement.executeUpdate(
+					"WITH RECURSIVE tree(id, depth) AS (" +
+					"SELECT id, 0 FROM FileEntry WHERE parentID IS NULL " +
+					"AND fileTypeID=" + FileType.DIRECTORY.id() + " AND deletedTimestamp=0 UNION ALL " +
+					"SELECT FileEntry.id, tree.depth + 1 FROM tree JOIN FileEntry ON FileEntry.parentID=tree.id " +
+					"WHERE FileEntry.fileTypeID=" + FileType.DIRECTORY.id() + " AND FileEntry.deletedTimestamp=0) " +
+					"INSERT INTO temp.DirectoryDepth SELECT id, depth FROM tree");
+			statement.executeUpdate("CREATE INDEX temp.DirectoryDepth_depth ON DirectoryDepth (depth)");
+
+			int maxDepth;
+			try (ResultSet resultSet = statement.executeQuery("SELECT MAX(depth) FROM temp.DirectoryDepth")) {
+				maxDepth = resultSet.next() ? resultSet.getInt(1) : 0;
+			}
+
+			try (PreparedStatement insertStatementLevel = connection.prepareStatement(INSERT_LEVEL)) {
+				insertStatementLevel.setQueryTimeout(0);
+
+				for (int depth = maxDepth; depth >= 0; depth--) {
+					insertStatementLevel.setObject(1, depth);
+					insertStatementLevel.executeUpdate();
+				}
+			}
+
+			statement.executeUpdate("DROP TABLE temp.DirectoryDepth");
+		}
+	}
+}
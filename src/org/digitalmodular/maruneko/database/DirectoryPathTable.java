@@ -0,0 +1,131 @@
+package org.digitalmodular.maruneko.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.jetbrains.annotations.Nullable;
+
+import static org.digitalmodular.utilities.ValidatorUtilities.requireAtLeast;
+import static org.digitalmodular.utilities.ValidatorUtilities.requireNonNull;
+
+/**
+ * The full path of every directory, so the path of any entry takes a single lookup (of its parent) instead of one per
+ * ancestor. Only directories are stored, which keeps the table a fraction of the size of the catalog.
+ * <p>
+ * Triggers on {@link FileEntryTable} keep it up to date, deriving each path from the parent's. This relies on a
+ * directory being written before its children, which the scanner guarantees. Catalogs from before this table are
+ * filled in a single pass when opened. As only the triggers write it, this class only reads it.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+public final class DirectoryPathTable {
+	public static final String TABLE_NAME = "DirectoryPath";
+
+	/**
+	 * The path of a directory, given the path of its parent ({@code parent}) and its name ({@code name}).
+	 */
+	private static final String CHILD_PATH = "CASE WHEN substr(parent.path, -1)='/' " +
+	                                         "THEN parent.path || name.name " +
+	                                         "ELSE parent.path || '/' || name.name END";
+
+	/**
+	 * Entries are written with {@code REPLACE}, which doesn't fire delete triggers. The row it replaces (with the same
+	 * ID, or the same parent and name) may be a directory, so its path is removed first.
+	 */
+	private static final String BEFORE_INSERT_TRIGGER_NAME = "DirectoryPath_beforeInsert";
+
+	private static final String[] TRIGGERS = {
+			"CREATE TRIGGER IF NOT EXISTS " + BEFORE_INSERT_TRIGGER_NAME + " BEFORE INSERT ON FileEntry BEGIN " +
+			"DELETE FROM DirectoryPath WHERE id=new.id OR id IN (" +
+			"SELECT id FROM FileEntry WHERE parentID IS new.parentID AND nameID=new.nameID); END",
+			"CREATE TRIGGER IF NOT EXISTS DirectoryPath_afterInsert AFTER INSERT ON FileEntry " +
+			"WHEN new.fileTypeID=" + FileType.DIRECTORY.id() + " BEGIN " +
+			"INSERT OR REPLACE INTO DirectoryPath " +
+			"SELECT new.id, CASE WHEN new.parentID IS NULL THEN name.name ELSE " + CHILD_PATH + " END " +
+			"FROM FileName AS name LEFT JOIN DirectoryPath AS parent ON parent.id=new.parentID " +
+			"WHERE name.id=new.nameID AND (new.parentID IS NULL OR parent.path IS NOT NULL); END",
+			"CREATE TRIGGER IF NOT EXISTS DirectoryPath_afterDelete AFTER DELETE ON FileEntry " +
+			"WHEN old.fileTypeID=" + FileType.DIRECTORY.id() + " BEGIN " +
+			"DELETE FROM DirectoryPath WHERE id=old.id; END"};
+
+	private final PreparedStatement selectStatementID;
+
+	/**
+	 * Creates the table and its triggers, and fills it when it's new. Must run after the other tables are created
+	 * or upgraded.
+	 */
+	public static void createTable(Connection connection) throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			statement.setQueryTimeout(0);
+
+			boolean exists          = hasSchemaObject(statement, "table", TABLE_NAME);
+			boolean hasBeforeInsert = hasSchemaObject(statement, "trigger", BEFORE_INSERT_TRIGGER_NAME);
+
+			statement.executeUpdate("CREATE TABLE IF NOT EXISTS DirectoryPath (" +
+			                        "id   INTEGER NOT NULL PRIMARY KEY," +
+			                        "path TEXT    NOT NULL CHECK(LENGTH(path) > 0))");
+
+			if (!exists) {
+				statement.executeUpdate(
+						"WITH RECURSIVE tree(id, path) AS (" +
+						"SELECT FileEntry.id, name.name FROM FileEntry " +
+						"JOIN FileName AS name ON name.id=FileEntry.nameID " +
+						"WHERE FileEntry.parentID IS NULL AND FileEntry.fileTypeID=" + FileType.DIRECTORY.id() +
+						" UNION ALL " +
+						"SELECT FileEntry.id, " + CHILD_PATH + " FROM tree AS parent " +
+						"JOIN FileEntry ON FileEntry.parentID=parent.id " +
+						"JOIN FileName AS name ON name.id=FileEntry.nameID " +
+						"WHERE FileEntry.fileTypeID=" + FileType.DIRECTORY.id() + ") " +
+						"INSERT INTO DirectoryPath SELECT id, path FROM tree");
+			} else if (!hasBeforeInsert) {
+				// Without that trigger, replaced directories may have left their path behind
+				statement.executeUpdate("DELETE FROM DirectoryPath WHERE id NOT IN (" +
+				                        "SELECT id FROM FileEntry WHERE fileTypeID=" + FileType.DIRECTORY.id() + ')');
+			}
+
+			for (String trigger : TRIGGERS) {
+				statement.executeUpdate(trigger);
+			}
+		}
+	}
+
+	private static boolean hasSchemaObject(Statement statement, String type, String name) throws SQLException {
+		try (ResultSet resultSet = statement.executeQuery(
+				"SELECT COUNT(*) FROM sqlite_master WHERE type='" + type + "' AND name='" + name + '\'')) {
+			return resultSet.next() && resultSet.getInt(1) > 0;
+		}
+	}
+
+	public DirectoryPathTable(Connection connection) throws SQLException {
+		requireNonNull(connection, "connection");
+
+		selectStatementID = connection.prepareStatement("SELECT path FROM DirectoryPath WHERE id=?");
+		selectStatementID.setQueryTimeout(Database.QUERY_TIMEOUT);
+	}
+
+	/**
+	 * @return the full path of a directory, or {@code null} when it isn't a directory or its path isn't known.
+	 */
+	public @Nullable String getPath(int dirID) throws SQLException {
+		requireAtLeast(1, dirID, "dirID");
+
+		selectStatementID.setObject(1, dirID);
+
+		try (ResultSet resultSet = selectStatementID.executeQuery()) {
+			return resultSet.next() ? resultSet.getString(1) : null;
+		} finally {
+			selectStatementID.clearParameters();
+		}
+	}
+
+	/**
+	 * @return the path of an entry in a directory, joined the same way as the stored paths.
+	 */
+	public static String resolve(String dirPath, String name) {
+		return dirPath.endsWith("/") ? dirPath + name : dirPath + '/' + name;
+	}
+}
@@ -2,6 +2,8 @@ package org.digitalmodular.maruneko.database;
 
 import java.sql.SQLException;
 
+import org.jetbrains.annotations.Nullable;
+
 import static org.digitalmodular.utilities.StringValidatorUtilities.requireStringLengthAtLeast;
 import static org.digitalmodular.utilities.ValidatorUtilities.requireAtLeast;
 import static org.digitalmodular.utilities.ValidatorUtilities.requireNonNull;
@@ -21,12 +23,16 @@ public record FileEntry(Database database,
                         long modificationTimestamp,
                         long accessTimestamp,
                         long firstSeenTimestamp,
-                        long lastSeenTimestamp
-                        // crc32?
+                        long lastSeenTimestamp,
+                        long deletedTimestamp,
+                        long inode,
+                        long device,
+                        int linkCount,
+                        long contentHash,
+                        @Nullable String strongHash,
+                        long hashedTimestamp
                         // comment?
                         // attributes/permissions?
-                        // hash?
-                        // hashedTimestamp?
                         // categories (using an XTable)?
 ) {
 	public FileEntry {
@@ -37,9 +43,98 @@ public record FileEntry(Database database,
 		requireAtLeast(1, volumeID, "volumeID");
 		requireAtLeast(0, fileTypeID, "fileTypeID");
 		requireAtLeast(0, size, "size");
+		requireAtLeast(0, deletedTimestamp, "deletedTimestamp");
+		requireAtLeast(0, linkCount, "linkCount");
+		requireAtLeast(0, hashedTimestamp, "hashedTimestamp");
+	}
+
+	/**
+	 * @return whether a rescan found this entry to be gone from the disk.
+	 */
+	public boolean isDeleted() {
+		return deletedTimestamp > 0;
+	}
+
+	/**
+	 * @return whether the scanner read the contents of this file. {@link #contentHash()} (and {@link #strongHash()},
+	 * if it was asked for) are then valid for the contents as they were at {@link #hashedTimestamp()}.
+	 */
+	public boolean isHashed() {
+		return hashedTimestamp > 0;
+	}
+
+	/**
+	 * @return a copy of this entry that takes the place of {@code existing} in the catalog.
+	 */
+	public FileEntry replacing(FileEntry existing) {
+		return new FileEntry(database, existing.id(),
+		                     parentID,
+		                     name,
+		                     volumeID,
+		                     fileTypeID,
+		                     size,
+		                     creationTimestamp,
+		                     modificationTimestamp,
+		                     accessTimestamp,
+		                     existing.firstSeenTimestamp(),
+		                     lastSeenTimestamp,
+		                     0,
+		                     inode,
+		                     device,
+		                     linkCount,
+		                     contentHash,
+		                     strongHash,
+		                     hashedTimestamp);
+	}
+
+	/**
+	 * @return whether this entry is one of several names for the same file. Only known when the scanner could read
+	 * the {@code unix} attributes, which it also stores in {@link #inode()} and {@link #device()}.
+	 */
+	public boolean isHardLinked() {
+		return linkCount > 1 && fileTypeID != FileType.DIRECTORY.id();
 	}
 
+	/**
+	 * @return the path of this entry, from the path of its parent in the {@link DirectoryPathTable}. Only when that
+	 * isn't known, the path is assembled by looking up every ancestor.
+	 */
 	public String getFullPath() {
+		if (parentID == 0) {
+			return name;
+		}
+
+		try {
+			@Nullable String parentPath = database.directoryPathTable.getPath(parentID);
+			if (parentPath != null) {
+				return DirectoryPathTable.resolve(parentPath, name);
+			}
+		} catch (SQLException ignored) {
+			// The walk below shows the error in the path
+		}
+
+		return walkFullPath();
+	}
+
+	/**
+	 * @return whether this entry is somewhere below {@code directory}, in the same catalog.
+	 */
+	public boolean isUnder(FileEntry directory) {
+		requireNonNull(directory, "directory");
+		if (directory.database() != database || directory.fileTypeID() != FileType.DIRECTORY.id()) {
+			return false;
+		}
+
+		String directoryPath = directory.getFullPath();
+		String path          = getFullPath();
+		if (path.length() <= directoryPath.length() || !path.startsWith(directoryPath)) {
+			return false;
+		}
+
+		return directoryPath.endsWith("/") || path.charAt(directoryPath.length()) == '/';
+	}
+
+	private String walkFullPath() {
 		StringBuilder path = new StringBuilder(288).append(name);
 
 		try {
@@ -5,14 +5,20 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jetbrains.annotations.Nullable;
 
+import static org.digitalmodular.utilities.CollectionValidatorUtilities.requireValuesNonNull;
 import static org.digitalmodular.utilities.StringValidatorUtilities.requireStringNotEmpty;
 import static org.digitalmodular.utilities.ValidatorUtilities.requireAtLeast;
 import static org.digitalmodular.utilities.ValidatorUtilities.requireNonNull;
 
+import static org.digitalmodular.maruneko.diskscanner.DiskScanner.breakpoint;
+
 /**
  * @author Mark Jeronimus
  */
@@ -20,86 +26,211 @@ import static org.digitalmodular.utilities.ValidatorUtilities.requireNonNull;
 public final class FileEntryTable extends AbstractTable<FileEntry> {
 	public static final String TABLE_NAME = "FileEntry";
 
+	/**
+	 * The secondary indexes, for the lookups by name, type and size or by volume. Lookups by parent use the index of
+	 * the {@code pn} constraint. Searches by (part of) the name use the indexes of {@link FileNameTable}.
+	 */
+	private static final String[] INDEX_NAMES   = {"FileEntry_nameTypeSize",
+	                                               "FileEntry_typeSize",
+	                                               "FileEntry_volumeID"};
+	private static final String[] INDEX_COLUMNS = {"nameID, fileTypeID, size",
+	                                               "fileTypeID, size",
+	                                               "volumeID"};
+
+	/**
+	 * The columns of {@link FileEntry}, in order. The name is looked up in {@link FileNameTable}, and comes last so
+	 * the other columns keep their indices.
+	 */
+	private static final String SELECT_ALL = "SELECT FileEntry.*, FileName.name FROM FileEntry " +
+	                                         "JOIN FileName ON FileName.id=FileEntry.nameID";
+
 	private final Database database;
 
 	private final FileTypeTable fileTypeTable;
+	private final FileNameTable fileNameTable;
 
 	private final PreparedStatement insertStatement;
+	private final PreparedStatement selectStatementAll;
 	private final PreparedStatement selectStatementMaxID;
 	private final PreparedStatement selectStatementID;
 	private final PreparedStatement deleteStatementID;
 	private final PreparedStatement selectStatementParentID;
+	private final PreparedStatement selectStatementParentIDWithDeleted;
 	private final PreparedStatement selectStatementParentCount;
 	private final PreparedStatement selectStatementParentIDAndName;
 	private final PreparedStatement selectStatementNameAndType;
 	private final PreparedStatement selectStatementNameTypeSize;
 	private final PreparedStatement selectStatementVolumeIDFirst;
 	private final PreparedStatement selectStatementTypeAndSize;
+	private final PreparedStatement updateStatementTouchChildren;
+	private final PreparedStatement updateStatementDeleteSubtree;
+	private final PreparedStatement updateStatementHash;
+
+	/**
+	 * The running search or subtree listing, which {@link #cancelTransaction()} interrupts.
+	 */
+	private volatile @Nullable PreparedStatement cancelableStatement = null;
+
+	/**
+	 * The highest ID in use or handed out by {@link #allocateID()}.
+	 */
+	private final AtomicInteger maxEntry = new AtomicInteger();
+
+	/**
+	 * Creates the table, or upgrades one created by an older version. Moving the names out of the table replaces it,
+	 * so this must run with foreign keys off.
+	 */
+	public static void createTable(Connection connection) throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			statement.setQueryTimeout(Database.QUERY_TIMEOUT);
 
-	private volatile @Nullable PreparedStatement selectStatementNameRegex = null;
+			statement.executeUpdate(getTableDefinition(TABLE_NAME));
+		}
 
-	private int maxEntry;
+		addColumnIfMissing(connection, TABLE_NAME, "deletedTimestamp", "INTEGER NOT NULL DEFAULT 0");
+		addColumnIfMissing(connection, TABLE_NAME, "inode", "INTEGER NOT NULL DEFAULT 0");
+		addColumnIfMissing(connection, TABLE_NAME, "device", "INTEGER NOT NULL DEFAULT 0");
+		addColumnIfMissing(connection, TABLE_NAME, "linkCount", "INTEGER NOT NULL DEFAULT 0");
+		addColumnIfMissing(connection, TABLE_NAME, "contentHash", "INTEGER NOT NULL DEFAULT 0");
+		addColumnIfMissing(connection, TABLE_NAME, "strongHash", "TEXT");
+		addColumnIfMissing(connection, TABLE_NAME, "hashedTimestamp", "INTEGER NOT NULL DEFAULT 0");
+
+		if (hasColumn(connection, TABLE_NAME, "name")) {
+			moveNamesToDictionary(connection);
+		}
+
+		// Also restores indexes that a bulk write dropped but didn't get to rebuild
+		createIndexes(connection);
+	}
+
+	private static String getTableDefinition(String tableName) {
+		return "CREATE TABLE IF NOT EXISTS " + tableName + " (" +
+		       "id                    INTEGER NOT NULL CHECK(id > 0) PRIMARY KEY," +
+		       "parentID              INTEGER          CHECK(parentID >= 0)," +
+		       "nameID                INTEGER NOT NULL," +
+		       "volumeID              INTEGER NOT NULL CHECK(volumeID > 0)," +
+		       "fileTypeID            INTEGER NOT NULL," +
+		       "size                  INTEGER NOT NULL CHECK(size >= 0)," +
+		       "creationTimestamp     INTEGER NOT NULL," +
+		       "modificationTimestamp INTEGER NOT NULL," +
+		       "accessTimestamp       INTEGER NOT NULL," +
+		       "firstSeenTimestamp    INTEGER NOT NULL," +
+		       "lastSeenTimestamp     INTEGER NOT NULL," +
+		       "deletedTimestamp      INTEGER NOT NULL DEFAULT 0," +
+		       "inode                 INTEGER NOT NULL DEFAULT 0," +
+		       "device                INTEGER NOT NULL DEFAULT 0," +
+		       "linkCount             INTEGER NOT NULL DEFAULT 0," +
+		       "contentHash           INTEGER NOT NULL DEFAULT 0," +
+		       "strongHash            TEXT," +
+		       "hashedTimestamp       INTEGER NOT NULL DEFAULT 0," +
+		       "CONSTRAINT pn UNIQUE (parentID, nameID)," +
+		       "FOREIGN KEY (parentID) REFERENCES FileEntry(id)," +
+		       "FOREIGN KEY (nameID) REFERENCES " + FileNameTable.TABLE_NAME + "(id)," +
+		       "FOREIGN KEY (fileTypeID) REFERENCES " + FileTypeTable.TABLE_NAME + "(id))";
+	}
+
+	/**
+	 * Upgrades a table that stores names as text to one that refers to {@link FileNameTable}. SQLite can't change a
+	 * column that is part of a constraint, so the table is copied, and the copy takes its place.
+	 */
+	@SuppressWarnings("UseOfSystemOutOrSystemErr")
+	private static void moveNamesToDictionary(Connection connection) throws SQLException {
+		System.out.println("Moving the file names to a dictionary");
 
-	public static void createTable(Connection connection) throws SQLException {
 		try (Statement statement = connection.createStatement()) {
-			statement.setQueryTimeout(Database.QUERY_TIMEOUT);
+			statement.setQueryTimeout(0);
+
+			// The name index of the previous version, which the old table's triggers write to
+			statement.executeUpdate("DROP TABLE IF EXISTS FileEntryName");
+			FileNameTable.dropIndexes(connection);
+
+			statement.executeUpdate("INSERT OR IGNORE INTO FileName (name) SELECT name FROM FileEntry");
+
+			statement.executeUpdate(getTableDefinition("FileEntry_new"));
+			statement.executeUpdate("INSERT INTO FileEntry_new SELECT FileEntry.id, parentID, FileName.id, " +
+			                        "volumeID, fileTypeID, size, creationTimestamp, modificationTimestamp, " +
+			                        "accessTimestamp, firstSeenTimestamp, lastSeenTimestamp, deletedTimestamp, " +
+			                        "inode, device, linkCount, contentHash, strongHash, hashedTimestamp " +
+			                        "FROM FileEntry JOIN FileName ON FileName.name=FileEntry.name");
+			statement.executeUpdate("DROP TABLE FileEntry");
+			statement.executeUpdate("ALTER TABLE FileEntry_new RENAME TO FileEntry");
+		}
+	}
+
+	private static void createIndexes(Connection connection) throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			statement.setQueryTimeout(0);
 
-			statement.executeUpdate("CREATE TABLE IF NOT EXISTS FileEntry (" +
-			                        "id                    INTEGER NOT NULL CHECK(id > 0) PRIMARY KEY," +
-			                        "parentID              INTEGER          CHECK(parentID >= 0)," +
-			                        "name                  TEXT    NOT NULL CHECK(LENGTH(name) > 0)," +
-			                        "volumeID              INTEGER NOT NULL CHECK(volumeID > 0)," +
-			                        "fileTypeID            INTEGER NOT NULL," +
-			                        "size                  INTEGER NOT NULL CHECK(size >= 0)," +
-			                        "creationTimestamp     INTEGER NOT NULL," +
-			                        "modificationTimestamp INTEGER NOT NULL," +
-			                        "accessTimestamp       INTEGER NOT NULL," +
-			                        "firstSeenTimestamp INTEGER NOT NULL," +
-			                        "lastSeenTimestamp  INTEGER NOT NULL," +
-			                        "CONSTRAINT pn UNIQUE (parentID, name)," +
-			                        "FOREIGN KEY (parentID) REFERENCES FileEntry(id)," +
-			                        "FOREIGN KEY (fileTypeID) REFERENCES " + FileTypeTable.TABLE_NAME + "(id))");
+			for (int i = 0; i < INDEX_NAMES.length; i++) {
+				statement.executeUpdate("CREATE INDEX IF NOT EXISTS " + INDEX_NAMES[i] +
+				                        " ON FileEntry (" + INDEX_COLUMNS[i] + ')');
+			}
 		}
+
+		FileNameTable.createIndexes(connection);
 	}
 
-	public FileEntryTable(Database database, Connection connection, FileTypeTable fileTypeTable) throws SQLException {
+	public FileEntryTable(Database database,
+	                      Connection connection,
+	                      FileTypeTable fileTypeTable,
+	                      FileNameTable fileNameTable) throws SQLException {
 		super(connection, TABLE_NAME);
 		this.database      = requireNonNull(database, "database");
 		this.fileTypeTable = requireNonNull(fileTypeTable, "fileTypeTable");
+		this.fileNameTable = requireNonNull(fileNameTable, "fileNameTable");
 
-		insertStatement = connection.prepareStatement("REPLACE INTO FileEntry VALUES (?,?,?,?,?,?,?,?,?,?,?)");
+		insertStatement = connection.prepareStatement(
+				"REPLACE INTO FileEntry VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)");
 		insertStatement.setQueryTimeout(Database.QUERY_TIMEOUT);
+		selectStatementAll = connection.prepareStatement(SELECT_ALL);
+		selectStatementAll.setQueryTimeout(Database.QUERY_TIMEOUT);
 		selectStatementMaxID = connection.prepareStatement("SELECT MAX(id) FROM FileEntry");
 		selectStatementMaxID.setQueryTimeout(Database.QUERY_TIMEOUT);
 		selectStatementID = connection.prepareStatement(
-				"SELECT * FROM FileEntry WHERE id=?");
+				SELECT_ALL + " WHERE FileEntry.id=?");
 		selectStatementID.setQueryTimeout(Database.QUERY_TIMEOUT);
 		deleteStatementID = connection.prepareStatement(
 				"DELETE FROM FileEntry WHERE id=?");
 		deleteStatementID.setQueryTimeout(Database.QUERY_TIMEOUT);
 		selectStatementParentID = connection.prepareStatement(
-				"SELECT * FROM FileEntry WHERE parentID=? ORDER BY name");
+				SELECT_ALL + " WHERE parentID=? AND deletedTimestamp=0 ORDER BY FileName.name");
 		selectStatementParentID.setQueryTimeout(Database.QUERY_TIMEOUT);
+		selectStatementParentIDWithDeleted = connection.prepareStatement(
+				SELECT_ALL + " WHERE parentID=? ORDER BY FileName.name");
+		selectStatementParentIDWithDeleted.setQueryTimeout(Database.QUERY_TIMEOUT);
 		selectStatementParentCount = connection.prepareStatement(
 				"SELECT COUNT(*) FROM FileEntry WHERE parentID=?");
 		selectStatementParentCount.setQueryTimeout(Database.QUERY_TIMEOUT);
 		selectStatementParentIDAndName = connection.prepareStatement(
-				"SELECT * FROM FileEntry WHERE IFNULL(parentID,'')=? AND name=?");
+				SELECT_ALL + " WHERE parentID IS ? AND nameID=?");
 		selectStatementParentIDAndName.setQueryTimeout(Database.QUERY_TIMEOUT);
 		selectStatementNameAndType = connection.prepareStatement(
-				"SELECT * FROM FileEntry WHERE name=? AND fileTypeID=?");
+				SELECT_ALL + " WHERE nameID=? AND fileTypeID=? AND deletedTimestamp=0");
 		selectStatementNameAndType.setQueryTimeout(Database.QUERY_TIMEOUT);
 		selectStatementNameTypeSize = connection.prepareStatement(
-				"SELECT * FROM FileEntry WHERE name=? AND fileTypeID=? AND size=?");
+				SELECT_ALL + " WHERE nameID=? AND fileTypeID=? AND size=? AND deletedTimestamp=0");
 		selectStatementNameTypeSize.setQueryTimeout(Database.QUERY_TIMEOUT);
 		selectStatementVolumeIDFirst = connection.prepareStatement(
-				"SELECT * FROM FileEntry WHERE volumeID=? LIMIT 1");
+				SELECT_ALL + " WHERE volumeID=? LIMIT 1");
 		selectStatementVolumeIDFirst.setQueryTimeout(Database.QUERY_TIMEOUT);
 		selectStatementTypeAndSize = connection.prepareStatement(
-				"SELECT * FROM FileEntry WHERE fileTypeID=? AND size=?");
+				SELECT_ALL + " WHERE fileTypeID=? AND size=? AND deletedTimestamp=0");
 		selectStatementTypeAndSize.setQueryTimeout(Database.QUERY_TIMEOUT);
-
-		maxEntry = getMaxID();
+		updateStatementTouchChildren = connection.prepareStatement(
+				"UPDATE FileEntry SET lastSeenTimestamp=? " +
+				"WHERE parentID=? AND deletedTimestamp=0 AND lastSeenTimestamp<?");
+		updateStatementTouchChildren.setQueryTimeout(Database.QUERY_TIMEOUT);
+		updateStatementDeleteSubtree = connection.prepareStatement(
+				"WITH RECURSIVE subtree(id) AS (" +
+				"SELECT ? UNION ALL " +
+				"SELECT FileEntry.id FROM FileEntry JOIN subtree ON FileEntry.parentID=subtree.id) " +
+				"UPDATE FileEntry SET deletedTimestamp=? WHERE deletedTimestamp=0 AND id IN subtree");
+		updateStatementDeleteSubtree.setQueryTimeout(0);
+		updateStatementHash = connection.prepareStatement(
+				"UPDATE FileEntry SET contentHash=?, strongHash=?, hashedTimestamp=? WHERE id=?");
+		updateStatementHash.setQueryTimeout(Database.QUERY_TIMEOUT);
+
+		maxEntry.set(getMaxID());
 	}
 
 	@Override
@@ -113,7 +244,7 @@ public final class FileEntryTable extends AbstractTable<FileEntry> {
 		return new FileEntry(database,
 		                     resultSet.getInt(1),
 		                     resultSet.getInt(2),
-		                     resultSet.getString(3),
+		                     resultSet.getString(19),
 		                     resultSet.getInt(4),
 		                     fileTypeID,
 		                     resultSet.getLong(6),
@@ -121,11 +252,56 @@ public final class FileEntryTable extends AbstractTable<FileEntry> {
 		                     resultSet.getLong(8),
 		                     resultSet.getLong(9),
 		                     resultSet.getLong(10),
-		                     resultSet.getLong(11));
+		                     resultSet.getLong(11),
+		                     resultSet.getLong(12),
+		                     resultSet.getLong(13),
+		                     resultSet.getLong(14),
+		                     resultSet.getInt(15),
+		                     resultSet.getLong(16),
+		                     resultSet.getString(17),
+		                     resultSet.getLong(18));
 	}
 
 	@Override
 	public FileEntry addValue(FileEntry value) throws SQLException {
+		value = bindInsertStatement(value);
+		insertStatement.executeUpdate();
+//		insertStatement.clearParameters();
+
+		return value;
+	}
+
+	/**
+	 * Adds entries using JDBC batches of {@link #getBatchSize()} rows. IDs are assigned the same way as in
+	 * {@link #addValue(FileEntry)}, so the returned entries can be used as parents right away.
+	 */
+	@Override
+	public List<FileEntry> addValues(Iterable<FileEntry> values) throws SQLException {
+		requireValuesNonNull(values, "values");
+
+		int             batchSize  = getBatchSize();
+		List<FileEntry> added      = new ArrayList<>(batchSize);
+		int             numBatched = 0;
+
+		for (FileEntry value : values) {
+			added.add(bindInsertStatement(value));
+			insertStatement.addBatch();
+			numBatched++;
+
+			if (numBatched == batchSize) {
+				insertStatement.executeBatch();
+				numBatched = 0;
+			}
+		}
+
+		if (numBatched > 0) {
+			insertStatement.executeBatch();
+		}
+
+		return added;
+	}
+
+	private FileEntry bindInsertStatement(FileEntry value) throws SQLException {
 		int    id                    = value.id();
 		int    parentID              = value.parentID();
 		String name                  = value.name();
@@ -137,10 +313,16 @@ public final class FileEntryTable extends AbstractTable<FileEntry> {
 		long   accessTimestamp       = value.accessTimestamp();
 		long   firstSeenTimestamp    = value.firstSeenTimestamp();
 		long   lastSeenTimestamp     = value.lastSeenTimestamp();
+		long   deletedTimestamp      = value.deletedTimestamp();
+		long   inode                 = value.inode();
+		long   device                = value.device();
+		int    linkCount             = value.linkCount();
+		long   contentHash           = value.contentHash();
+		String strongHash            = value.strongHash();
+		long   hashedTimestamp       = value.hashedTimestamp();
 
 		if (id == 0) {
-			maxEntry++;
-			id = maxEntry;
+			id = allocateID();
 
 			value = new FileEntry(database, id,
 			                      parentID,
@@ -152,12 +334,19 @@ public final class FileEntryTable extends AbstractTable<FileEntry> {
 			                      modificationTimestamp,
 			                      accessTimestamp,
 			                      firstSeenTimestamp,
-			                      lastSeenTimestamp);
+			                      lastSeenTimestamp,
+			                      deletedTimestamp,
+			                      inode,
+			                      device,
+			                      linkCount,
+			                      contentHash,
+			                      strongHash,
+			                      hashedTimestamp);
 		}
 
 		insertStatement.setObject(1, id);
 		insertStatement.setObject(2, parentID == 0 ? null : parentID);
-		insertStatement.setObject(3, name);
+		insertStatement.setObject(3, fileNameTable.getOrAddID(name));
 		insertStatement.setObject(4, volumeID);
 		insertStatement.setObject(5, fileTypeID);
 		insertStatement.setObject(6, size);
@@ -166,46 +355,83 @@ public final class FileEntryTable extends AbstractTable<FileEntry> {
 		insertStatement.setObject(9, accessTimestamp);
 		insertStatement.setObject(10, firstSeenTimestamp);
 		insertStatement.setObject(11, lastSeenTimestamp);
-		insertStatement.executeUpdate();
-//		insertStatement.clearParameters();
+		insertStatement.setObject(12, deletedTimestamp);
+		insertStatement.setObject(13, inode);
+		insertStatement.setObject(14, device);
+		insertStatement.setObject(15, linkCount);
+		insertStatement.setObject(16, contentHash);
+		insertStatement.setObject(17, strongHash);
+		insertStatement.setObject(18, hashedTimestamp);
 
 		return value;
 	}
 
+	/**
+	 * Adds an entry, or replaces the entry with the same parent and name while keeping its ID and first-seen time.
+	 */
 	public FileEntry updateValue(FileEntry fileEntry) throws SQLException {
-//		@Nullable FileEntry existing = getByParentIDAndName(fileEntry.parentID(), fileEntry.name());
-
-//		if (existing != null) {
-//			if (fileEntry.id() > 0) {
-//				DiskScanner.breakpoint(); // Duplicate entry, which is not allowed
-//			}
-//
-//			long minCreationTimestamp = Math.min(fileEntry.creationTimestamp(), existing.creationTimestamp());
-//			long maxAccessTimestamp   = Math.min(fileEntry.accessTimestamp(), existing.accessTimestamp());
-//
-//			fileEntry = new FileEntry(existing.id(),
-//			                          fileEntry.parentID(),
-//			                          fileEntry.name(),
-//			                          fileEntry.volumeID(),
-//			                          fileEntry.fileTypeID(),
-//			                          fileEntry.size(),
-//			                          minCreationTimestamp,
-//			                          fileEntry.modificationTimestamp(),
-//			                          maxAccessTimestamp,
-//			                          existing.firstSeenTimestamp(),
-//			                          fileEntry.lastSeenTimestamp());
-//		}
+		@Nullable FileEntry existing = getByParentIDAndName(fileEntry.parentID(), fileEntry.name());
+
+		if (existing != null) {
+			if (fileEntry.id() > 0 && fileEntry.id() != existing.id()) {
+				breakpoint(); // Duplicate entry, which is not allowed
+			}
+
+			fileEntry = fileEntry.replacing(existing);
+		}
 
 		return addValue(fileEntry);
 	}
 
+	/**
+	 * Drops the secondary indexes (also those of the names) before writing many rows, so they don't have to be
+	 * updated for every row. The lookups that use them fall back to full table scans until {@link #createIndexes()}.
+	 * When that doesn't happen, the next time the catalog is opened does it.
+	 */
+	public void dropIndexes() throws SQLException {
+		try (Statement statement = getConnection().createStatement()) {
+			statement.setQueryTimeout(Database.QUERY_TIMEOUT);
+
+			for (String indexName : INDEX_NAMES) {
+				statement.executeUpdate("DROP INDEX IF EXISTS " + indexName);
+			}
+		}
+
+		FileNameTable.dropIndexes(getConnection());
+	}
+
+	/**
+	 * (Re)builds the secondary indexes that are missing, each in a single pass over the table. This takes a while on
+	 * large catalogs, so it has no timeout.
+	 */
+	public void createIndexes() throws SQLException {
+		createIndexes(getConnection());
+	}
+
+	/**
+	 * Reserves a new ID without writing anything, for callers that need to know the ID before the entry is added.
+	 * Safe to call from any number of threads without holding a lock on the database.
+	 */
+	public int allocateID() {
+		return maxEntry.incrementAndGet();
+	}
+
+	/**
+	 * Unlike the generic listing, this joins in the names, which aren't stored in {@code FileEntry} itself.
+	 */
+	@Override
+	public List<FileEntry> getAll() throws SQLException {
+		return getTableEntries(selectStatementAll);
+	}
+
 	public int getMaxID() throws SQLException {
-		if (maxEntry > 0) {
-			return maxEntry;
+		int maxID = maxEntry.get();
+		if (maxID > 0) {
+			return maxID;
 		}
 
-		@Nullable Long maxID = getLong(selectStatementMaxID);
-		return maxID == null ? 0 : maxID.intValue();
+		@Nullable Long storedMaxID = getLong(selectStatementMaxID);
+		return storedMaxID == null ? 0 : storedMaxID.intValue();
 	}
 
 	public @Nullable FileEntry getByID(int id) throws SQLException {
@@ -227,34 +453,207 @@ public final class FileEntryTable extends AbstractTable<FileEntry> {
 		return parentCount == null ? 0 : parentCount.intValue();
 	}
 
+	/**
+	 * @return the present children of a directory, sorted by name.
+	 */
 	public List<FileEntry> getByParentID(int parentID) throws SQLException {
+		return getByParentID(parentID, false);
+	}
+
+	/**
+	 * @param includeDeleted Whether to include children that were marked deleted, as the scanner needs to reuse
+	 *                       their IDs when they reappear
+	 * @return the children of a directory, sorted by name.
+	 */
+	public List<FileEntry> getByParentID(int parentID, boolean includeDeleted) throws SQLException {
 		requireAtLeast(0, parentID, "parentID");
 
-		return getTableEntries(selectStatementParentID, parentID);
+		return getTableEntries(includeDeleted ? selectStatementParentIDWithDeleted : selectStatementParentID,
+		                       parentID);
 	}
 
 	public @Nullable FileEntry getByParentIDAndName(int parentID, String name) throws SQLException {
 		requireAtLeast(0, parentID, "parentID");
 		requireStringNotEmpty(name, "name");
 
-		return getTableEntry(selectStatementParentIDAndName, parentID == 0 ? "" : parentID, name);
+		int nameID = fileNameTable.getID(name);
+		if (nameID == 0) {
+			return null;
+		}
+
+		return getTableEntry(selectStatementParentIDAndName, parentID == 0 ? null : parentID, nameID);
+	}
+
+	/**
+	 * Sets the last-seen time of all present children of a directory that weren't rewritten since
+	 * {@code lastSeenTimestamp}, in one statement.
+	 */
+	public void touchChildren(int parentID, long lastSeenTimestamp) throws SQLException {
+		requireAtLeast(1, parentID, "parentID");
+
+		updateStatementTouchChildren.setObject(1, lastSeenTimestamp);
+		updateStatementTouchChildren.setObject(2, parentID);
+		updateStatementTouchChildren.setObject(3, lastSeenTimestamp);
+		updateStatementTouchChildren.executeUpdate();
+		updateStatementTouchChildren.clearParameters();
+	}
+
+	/**
+	 * Marks an entry and everything below it as deleted. Entries stay in the catalog so they can still be found.
+	 */
+	public void markDeleted(int id, long deletedTimestamp) throws SQLException {
+		requireAtLeast(1, id, "id");
+		requireAtLeast(1, deletedTimestamp, "deletedTimestamp");
+
+		updateStatementDeleteSubtree.setObject(1, id);
+		updateStatementDeleteSubtree.setObject(2, deletedTimestamp);
+		updateStatementDeleteSubtree.executeUpdate();
+		updateStatementDeleteSubtree.clearParameters();
+	}
+
+	/**
+	 * Records the hashes of the contents of a file, as they were at {@code hashedTimestamp}.
+	 */
+	public void setHash(int id, long contentHash, @Nullable String strongHash, long hashedTimestamp)
+			throws SQLException {
+		requireAtLeast(1, id, "id");
+		requireAtLeast(1, hashedTimestamp, "hashedTimestamp");
+
+		updateStatementHash.setObject(1, contentHash);
+		updateStatementHash.setObject(2, strongHash);
+		updateStatementHash.setObject(3, hashedTimestamp);
+		updateStatementHash.setObject(4, id);
+		updateStatementHash.executeUpdate();
+		updateStatementHash.clearParameters();
 	}
 
+	/**
+	 * Receives the entries of a subtree, one at a time, as {@link #forEachInSubtree} reads them.
+	 *
+	 * @author Mark Jeronimus
+	 */
+	// Created 2026-10-17
+	@FunctionalInterface
+	public interface SubtreeVisitor {
+		/**
+		 * @param depth    1 for the children of the directory, 2 for their children, and so on
+		 * @param fullPath The path of the entry, as {@link FileEntry#getFullPath()} would return it
+		 */
+		void visit(FileEntry entry, int depth, String fullPath) throws SQLException;
+	}
+
+	/**
+	 * Lists everything present below a directory in a single recursive query, level by level. Entries are handed to
+	 * the visitor as they are read, so a large subtree is never held in memory, and their paths come from the same
+	 * query.
+	 * <p>
+	 * The listing has no timeout, but {@link #cancelTransaction()} stops it.
+	 *
+	 * @param maxDepth The number of levels to list, or 0 for all
+	 */
+	public void forEachInSubtree(int dirID, int maxDepth, SubtreeVisitor visitor) throws SQLException {
+		requireAtLeast(1, dirID, "dirID");
+		requireAtLeast(0, maxDepth, "maxDepth");
+		requireNonNull(visitor, "visitor");
+
+		try (PreparedStatement statement = getConnection().prepareStatement(
+				"WITH RECURSIVE subtree(id, fileTypeID, depth) AS (" +
+				"SELECT id, fileTypeID, 1 FROM FileEntry WHERE parentID=? AND deletedTimestamp=0 UNION ALL " +
+				"SELECT FileEntry.id, FileEntry.fileTypeID, subtree.depth + 1 FROM subtree " +
+				"JOIN FileEntry ON FileEntry.parentID=subtree.id " +
+				"WHERE subtree.fileTypeID=" + FileType.DIRECTORY.id() + " AND subtree.depth<? " +
+				"AND FileEntry.deletedTimestamp=0) " +
+				"SELECT FileEntry.*, FileName.name, subtree.depth, DirectoryPath.path FROM subtree " +
+				"JOIN FileEntry ON FileEntry.id=subtree.id " +
+				"JOIN FileName ON FileName.id=FileEntry.nameID " +
+				"LEFT JOIN DirectoryPath ON DirectoryPath.id=FileEntry.parentID")) {
+			cancelableStatement = statement;
+
+			statement.setObject(1, dirID);
+			statement.setObject(2, maxDepth == 0 ? Integer.MAX_VALUE : maxDepth);
+
+			try (ResultSet resultSet = statement.executeQuery()) {
+				while (resultSet.next()) {
+					FileEntry        entry      = constructValue(resultSet);
+					int              depth      = resultSet.getInt(20);
+					@Nullable String parentPath = resultSet.getString(21);
+
+					visitor.visit(entry,
+					              depth,
+					              parentPath == null ? entry.getFullPath() :
+					              DirectoryPathTable.resolve(parentPath, entry.name()));
+				}
+			}
+		} finally {
+			cancelableStatement = null;
+		}
+	}
+
+	/**
+	 * Finds the present entries of which the lower-cased name contains a match of a regular expression.
+	 * <p>
+	 * The expression runs on the distinct names in {@link FileNameTable}, not on every entry. The literal text that
+	 * every match needs is first looked up in the trigram index, for literals of at least three characters, and then
+	 * checked with {@code LIKE}, which uses the {@code FileName_nameNoCase} index when the expression starts with
+	 * {@code ^} and a literal. The expression itself only runs on the names that pass.
+	 */
 	public List<FileEntry> getByNameRegex(String query) throws SQLException {
 		requireStringNotEmpty(query, "query");
 
-		PreparedStatement statement = getConnection().prepareStatement("SELECT * FROM FileEntry WHERE name REGEXP ?");
-		selectStatementNameRegex = statement;
+		@Nullable RegexLiterals literals = RegexLiterals.of(query);
+		if (literals == null) {
+			PreparedStatement statement = getConnection().prepareStatement(
+					SELECT_ALL + " WHERE deletedTimestamp=0 AND nameID IN (" +
+					"SELECT id FROM FileName WHERE name REGEXP ?)");
+			cancelableStatement = statement;
+			statement.setQueryTimeout(5);
+
+			return getTableEntries(statement, query);
+		}
+
+		@Nullable String matchQuery = literals.toMatchQuery();
+		if (matchQuery == null || !hasTrigramIndex()) {
+			PreparedStatement statement = getConnection().prepareStatement(
+					SELECT_ALL + " WHERE deletedTimestamp=0 AND nameID IN (SELECT id FROM FileName " +
+					"WHERE name LIKE ? ESCAPE '\\' AND name REGEXP ?)");
+			cancelableStatement = statement;
+			statement.setQueryTimeout(5);
+
+			return getTableEntries(statement, literals.toLikePattern(), query);
+		}
+
+		PreparedStatement statement = getConnection().prepareStatement(
+				SELECT_ALL + " WHERE deletedTimestamp=0 AND nameID IN (SELECT id FROM FileName " +
+				"WHERE id IN (SELECT rowid FROM FileNameTrigram WHERE FileNameTrigram MATCH ?) " +
+				"AND name LIKE ? ESCAPE '\\' AND name REGEXP ?)");
+		cancelableStatement = statement;
 		statement.setQueryTimeout(5);
 
-		return getTableEntries(statement, query);
+		return getTableEntries(statement, matchQuery, literals.toLikePattern(), query);
+	}
+
+	/**
+	 * @return whether the trigram index exists. It's missing while a bulk write has it dropped, and from catalogs
+	 * that were only opened {@link Database.OpenMode#READ_IMMUTABLE immutable} since it was introduced.
+	 */
+	private boolean hasTrigramIndex() throws SQLException {
+		try (Statement statement = getConnection().createStatement()) {
+			statement.setQueryTimeout(Database.QUERY_TIMEOUT);
+
+			return FileNameTable.hasTrigramIndex(statement);
+		}
 	}
 
 	public List<FileEntry> getByNameAndType(String name, FileType fileType) throws SQLException {
 		requireStringNotEmpty(name, "name");
 		requireNonNull(fileType, "fileType");
 
-		return getTableEntries(selectStatementNameAndType, name, fileType.id());
+		int nameID = fileNameTable.getID(name);
+		if (nameID == 0) {
+			return Collections.emptyList();
+		}
+
+		return getTableEntries(selectStatementNameAndType, nameID, fileType.id());
 	}
 
 	public List<FileEntry> getByNameTypeSize(String name, FileType fileType, long size) throws SQLException {
@@ -262,7 +661,12 @@ public final class FileEntryTable extends AbstractTable<FileEntry> {
 		requireNonNull(fileType, "fileType");
 		requireAtLeast(0, size, "size");
 
-		return getTableEntries(selectStatementNameTypeSize, name, fileType.id(), size);
+		int nameID = fileNameTable.getID(name);
+		if (nameID == 0) {
+			return Collections.emptyList();
+		}
+
+		return getTableEntries(selectStatementNameTypeSize, nameID, fileType.id(), size);
 	}
 
 	public @Nullable FileEntry getFirstByVolumeID(int volumeID) throws SQLException {
@@ -279,10 +683,10 @@ public final class FileEntryTable extends AbstractTable<FileEntry> {
 	}
 
 	public void cancelTransaction() throws SQLException {
-		PreparedStatement statement = selectStatementNameRegex;
+		PreparedStatement statement = cancelableStatement;
 		if (statement != null) {
 			statement.cancel();
-			selectStatementNameRegex = null;
+			cancelableStatement = null;
 		}
 	}
 }
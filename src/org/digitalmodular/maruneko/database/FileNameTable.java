@@ -0,0 +1,191 @@
+package org.digitalmodular.maruneko.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.jetbrains.annotations.Nullable;
+
+import static org.digitalmodular.utilities.StringValidatorUtilities.requireStringLengthAtLeast;
+
+/**
+ * The dictionary of file names. Each distinct name is stored once, and {@link FileEntryTable} refers to it by ID, so
+ * names such as {@code index.html} or {@code Thumbs.db} that occur millions of times take only an integer per entry,
+ * and lookups by name compare integers.
+ * <p>
+ * Names are never removed, even when no entry uses them anymore.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+public final class FileNameTable extends AbstractTable<String> {
+	public static final String TABLE_NAME = "FileName";
+
+	/**
+	 * The number of recently used names of which the ID is remembered. Frequent names stay in it, so adding entries
+	 * rarely has to look up their name in the table.
+	 */
+	private static final int CACHE_SIZE = 65536;
+
+	/**
+	 * The secondary index, for regex searches that are anchored at the start of the name.
+	 */
+	private static final String NAME_NO_CASE_INDEX_NAME = "FileName_nameNoCase";
+
+	/**
+	 * A trigram full-text index of the names, for substring searches. It indexes the names in this table instead of
+	 * keeping its own copy, and the triggers keep it up to date.
+	 */
+	static final         String   TRIGRAM_INDEX_NAME     = "FileNameTrigram";
+	private static final String[] TRIGRAM_INDEX_TRIGGERS = {
+			"CREATE TRIGGER IF NOT EXISTS FileNameTrigram_afterInsert AFTER INSERT ON FileName BEGIN " +
+			"INSERT INTO FileNameTrigram (rowid, name) VALUES (new.id, new.name); END",
+			"CREATE TRIGGER IF NOT EXISTS FileNameTrigram_afterDelete AFTER DELETE ON FileName BEGIN " +
+			"INSERT INTO FileNameTrigram (FileNameTrigram, rowid, name) VALUES ('delete', old.id, old.name); END",
+			"CREATE TRIGGER IF NOT EXISTS FileNameTrigram_afterUpdate AFTER UPDATE OF name ON FileName BEGIN " +
+			"INSERT INTO FileNameTrigram (FileNameTrigram, rowid, name) VALUES ('delete', old.id, old.name); " +
+			"INSERT INTO FileNameTrigram (rowid, name) VALUES (new.id, new.name); END"};
+
+	private final PreparedStatement insertStatement;
+	private final PreparedStatement selectStatementMaxID;
+	private final PreparedStatement selectStatementName;
+
+	private final Map<String, Integer> cache = new LinkedHashMap<>(CACHE_SIZE * 2, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	};
+
+	/**
+	 * The highest ID in use, or 0 when not looked up yet.
+	 */
+	private int maxID = 0;
+
+	public static void createTable(Connection connection) throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			statement.setQueryTimeout(Database.QUERY_TIMEOUT);
+
+			statement.executeUpdate("CREATE TABLE IF NOT EXISTS FileName (" +
+			                        "id   INTEGER NOT NULL CHECK(id > 0) PRIMARY KEY," +
+			                        "name TEXT    NOT NULL CHECK(LENGTH(name) > 0) UNIQUE)");
+		}
+	}
+
+	/**
+	 * Called by {@link FileEntryTable#createIndexes()}, as names are written along with entries.
+	 */
+	static void createIndexes(Connection connection) throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			statement.setQueryTimeout(0);
+
+			statement.executeUpdate("CREATE INDEX IF NOT EXISTS " + NAME_NO_CASE_INDEX_NAME +
+			                        " ON FileName (name COLLATE NOCASE)");
+
+			if (!hasTrigramIndex(statement)) {
+				statement.executeUpdate("CREATE VIRTUAL TABLE " + TRIGRAM_INDEX_NAME + " USING fts5(" +
+				                        "name, content='FileName', content_rowid='id', tokenize='trigram')");
+				statement.executeUpdate("INSERT INTO " + TRIGRAM_INDEX_NAME + " (" + TRIGRAM_INDEX_NAME + ") " +
+				                        "VALUES ('rebuild')");
+			}
+
+			for (String trigger : TRIGRAM_INDEX_TRIGGERS) {
+				statement.executeUpdate(trigger);
+			}
+		}
+	}
+
+	/**
+	 * Called by {@link FileEntryTable#dropIndexes()}.
+	 */
+	static void dropIndexes(Connection connection) throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			statement.setQueryTimeout(Database.QUERY_TIMEOUT);
+
+			statement.executeUpdate("DROP INDEX IF EXISTS " + NAME_NO_CASE_INDEX_NAME);
+			statement.executeUpdate("DROP TRIGGER IF EXISTS FileNameTrigram_afterInsert");
+			statement.executeUpdate("DROP TRIGGER IF EXISTS FileNameTrigram_afterDelete");
+			statement.executeUpdate("DROP TRIGGER IF EXISTS FileNameTrigram_afterUpdate");
+			statement.executeUpdate("DROP TABLE IF EXISTS " + TRIGRAM_INDEX_NAME);
+		}
+	}
+
+	static boolean hasTrigramIndex(Statement statement) throws SQLException {
+		try (ResultSet resultSet = statement.executeQuery(
+				"SELECT COUNT(*) FROM sqlite_master WHERE type='table' AND name='" + TRIGRAM_INDEX_NAME + '\'')) {
+			return resultSet.next() && resultSet.getInt(1) > 0;
+		}
+	}
+
+	public FileNameTable(Connection connection) throws SQLException {
+		super(connection, TABLE_NAME);
+
+		insertStatement = connection.prepareStatement("INSERT INTO FileName VALUES (?,?)");
+		insertStatement.setQueryTimeout(Database.QUERY_TIMEOUT);
+		selectStatementMaxID = connection.prepareStatement("SELECT MAX(id) FROM FileName");
+		selectStatementMaxID.setQueryTimeout(Database.QUERY_TIMEOUT);
+		selectStatementName = connection.prepareStatement("SELECT id FROM FileName WHERE name=?");
+		selectStatementName.setQueryTimeout(Database.QUERY_TIMEOUT);
+	}
+
+	@Override
+	protected String constructValue(ResultSet resultSet) throws SQLException {
+		return resultSet.getString("name");
+	}
+
+	@Override
+	public String addValue(String value) throws SQLException {
+		getOrAddID(value);
+		return value;
+	}
+
+	/**
+	 * @return the ID of a name, which is added when it's new.
+	 */
+	public synchronized int getOrAddID(String name) throws SQLException {
+		@Nullable Integer id = cache.get(name);
+		if (id != null) {
+			return id;
+		}
+
+		id = getID(name);
+		if (id == 0) {
+			if (maxID == 0) {
+				@Nullable Long storedMaxID = getLong(selectStatementMaxID);
+				maxID = storedMaxID == null ? 0 : storedMaxID.intValue();
+			}
+
+			id = ++maxID;
+
+			insertStatement.setObject(1, id);
+			insertStatement.setObject(2, name);
+			insertStatement.executeUpdate();
+			insertStatement.clearParameters();
+		}
+
+		cache.put(name, id);
+		return id;
+	}
+
+	/**
+	 * @return the ID of a name, or 0 when no entry ever had this name.
+	 */
+	public int getID(String name) throws SQLException {
+		requireStringLengthAtLeast(1, name, "name");
+
+		@Nullable Long id = getLong(selectStatementName, name);
+		return id == null ? 0 : id.intValue();
+	}
+
+	/**
+	 * Forgets the IDs of names, which after a rollback may no longer exist.
+	 */
+	synchronized void clearCache() {
+		cache.clear();
+		maxID = 0;
+	}
+}
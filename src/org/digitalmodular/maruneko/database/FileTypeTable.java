@@ -43,7 +43,9 @@ public final class FileTypeTable extends AbstractTable<FileType> {
 		selectStatementName = connection.prepareStatement("SELECT * FROM FileType WHERE name=?");
 		selectStatementName.setQueryTimeout(Database.QUERY_TIMEOUT);
 
-		addDefaults();
+		if (!connection.isReadOnly()) {
+			addDefaults();
+		}
 	}
 
 	@Override
@@ -0,0 +1,24 @@
+package org.digitalmodular.maruneko.database;
+
+import static org.digitalmodular.utilities.StringValidatorUtilities.requireStringLengthAtLeast;
+import static org.digitalmodular.utilities.ValidatorUtilities.requireAtLeast;
+
+/**
+ * A directory of which the entry is in the catalog, but that wasn't completely listed yet by the scan that added it.
+ * Together these form the frontier an interrupted scan can be resumed from.
+ *
+ * @param remainingDepth The number of levels left to scan, including this directory's children (at least 1).
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+public record PendingDirectory(int dirID,
+                               int parentID,
+                               String path,
+                               int remainingDepth) {
+	public PendingDirectory {
+		requireAtLeast(1, dirID, "dirID");
+		requireAtLeast(0, parentID, "parentID");
+		requireStringLengthAtLeast(1, path, "path");
+		requireAtLeast(1, remainingDepth, "remainingDepth");
+	}
+}
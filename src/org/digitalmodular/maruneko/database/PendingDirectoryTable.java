@@ -0,0 +1,85 @@
+package org.digitalmodular.maruneko.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.jetbrains.annotations.Nullable;
+
+import static org.digitalmodular.utilities.ValidatorUtilities.requireAtLeast;
+
+/**
+ * The scan frontier: directories that are catalogued but not yet completely listed. Rows are added in the same
+ * transaction as the directory's entry and removed in the same transaction as its last child, so every commit holds a
+ * frontier that matches the catalog.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+public final class PendingDirectoryTable extends AbstractTable<PendingDirectory> {
+	public static final String TABLE_NAME = "PendingDirectory";
+
+	private final PreparedStatement insertStatement;
+	private final PreparedStatement deleteStatementDirID;
+	private final PreparedStatement selectStatementCount;
+
+	public static void createTable(Connection connection) throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			statement.setQueryTimeout(Database.QUERY_TIMEOUT);
+
+			statement.executeUpdate("CREATE TABLE IF NOT EXISTS PendingDirectory (" +
+			                        "dirID          INTEGER NOT NULL PRIMARY KEY," +
+			                        "parentID       INTEGER NOT NULL CHECK(parentID >= 0)," +
+			                        "path           TEXT    NOT NULL CHECK(LENGTH(path) > 0)," +
+			                        "remainingDepth INTEGER NOT NULL CHECK(remainingDepth > 0)," +
+			                        "FOREIGN KEY (dirID) REFERENCES " + FileEntryTable.TABLE_NAME +
+			                        "(id) ON DELETE CASCADE)");
+		}
+	}
+
+	public PendingDirectoryTable(Connection connection) throws SQLException {
+		super(connection, TABLE_NAME);
+
+		insertStatement = connection.prepareStatement("REPLACE INTO PendingDirectory VALUES (?,?,?,?)");
+		insertStatement.setQueryTimeout(Database.QUERY_TIMEOUT);
+		deleteStatementDirID = connection.prepareStatement("DELETE FROM PendingDirectory WHERE dirID=?");
+		deleteStatementDirID.setQueryTimeout(Database.QUERY_TIMEOUT);
+		selectStatementCount = connection.prepareStatement("SELECT COUNT(*) FROM PendingDirectory");
+		selectStatementCount.setQueryTimeout(Database.QUERY_TIMEOUT);
+	}
+
+	@Override
+	protected PendingDirectory constructValue(ResultSet resultSet) throws SQLException {
+		return new PendingDirectory(resultSet.getInt("dirID"),
+		                            resultSet.getInt("parentID"),
+		                            resultSet.getString("path"),
+		                            resultSet.getInt("remainingDepth"));
+	}
+
+	@Override
+	public PendingDirectory addValue(PendingDirectory value) throws SQLException {
+		insertStatement.setObject(1, value.dirID());
+		insertStatement.setObject(2, value.parentID());
+		insertStatement.setObject(3, value.path());
+		insertStatement.setObject(4, value.remainingDepth());
+		insertStatement.executeUpdate();
+		insertStatement.clearParameters();
+
+		return value;
+	}
+
+	public void deleteByDirID(int dirID) throws SQLException {
+		requireAtLeast(1, dirID, "dirID");
+
+		deleteStatementDirID.setObject(1, dirID);
+		deleteStatementDirID.executeUpdate();
+		deleteStatementDirID.clearParameters();
+	}
+
+	public int getCount() throws SQLException {
+		@Nullable Long count = getLong(selectStatementCount);
+		return count == null ? 0 : count.intValue();
+	}
+}
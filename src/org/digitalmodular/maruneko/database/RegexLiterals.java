@@ -0,0 +1,300 @@
+package org.digitalmodular.maruneko.database;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jetbrains.annotations.Nullable;
+
+import static org.digitalmodular.utilities.CollectionValidatorUtilities.requireValuesNonNull;
+
+/**
+ * The literal text that every match of a regular expression must contain, so a search can discard most rows with a
+ * cheap {@code LIKE} or trigram {@code MATCH} before running the expression itself. For example,
+ * {@code ^ab.*cd\.mp[34]$} needs {@code ab} at the start and {@code cd.mp} somewhere after it, which is
+ * {@code LIKE 'ab%cd.mp%'}.
+ * <p>
+ * Only the top level of the expression is examined, and anything that isn't understood (groups, character classes,
+ * most escapes) is treated as matching unknown text. An expression with a top-level alternation has no required
+ * literals. Only ASCII is extracted, as {@code LIKE} only ignores case for ASCII.
+ *
+ * @param literals The required literals, in the order they must appear in
+ * @param anchored Whether the first literal must be at the start
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+record RegexLiterals(List<String> literals, boolean anchored) {
+	/**
+	 * Escapes that match a single character (or nothing), and don't take an argument.
+	 */
+	private static final String SIMPLE_ESCAPES = "dDwWsShHvVRXbBAGZz";
+
+	/**
+	 * The shortest literal that a trigram index can look up.
+	 */
+	private static final int MIN_TRIGRAM_LENGTH = 3;
+
+	RegexLiterals {
+		requireValuesNonNull(literals, "literals");
+	}
+
+	/**
+	 * @return the required literals of the expression, or {@code null} when it has none or can't be analyzed.
+	 */
+	static @Nullable RegexLiterals of(String regex) {
+		List<String>  literals = new ArrayList<>(4);
+		StringBuilder run      = new StringBuilder(32);
+
+		int     i             = 0;
+		boolean atStart       = false;
+		boolean firstAnchored = false;
+		boolean lastLiteral   = false;
+
+		if (regex.startsWith("^")) {
+			atStart = true;
+			i++;
+		}
+
+		while (i < regex.length()) {
+			char c = regex.charAt(i);
+
+			int  literal = -1;
+			int  next;
+			switch (c) {
+				case '\\' -> {
+					if (i + 1 >= regex.length()) {
+						return null;
+					}
+
+					char escaped = regex.charAt(i + 1);
+					if (!isAsciiLetterOrDigit(escaped)) {
+						literal = escaped;
+					} else if (SIMPLE_ESCAPES.indexOf(escaped) < 0) {
+						return null;
+					}
+
+					next = i + 2;
+				}
+				case '[' -> next = skipClass(regex, i);
+				case '(' -> next = skipGroup(regex, i);
+				case '*', '+', '?', '{' -> {
+					if (i == 0) {
+						return null;
+					}
+
+					int minimum = c == '+' ? 1 : c == '{' ? parseMinimum(regex, i) : 0;
+					if (minimum < 0) {
+						return null;
+					}
+
+					if (minimum == 0 && lastLiteral) {
+						run.setLength(run.length() - 1);
+					}
+
+					flush(literals, run);
+					atStart = false;
+					lastLiteral = false;
+					i = skipQuantifier(regex, i);
+					continue;
+				}
+				case ')', '|' -> {
+					return null;
+				}
+				case '.', '^', '$' -> next = i + 1;
+				default -> {
+					literal = c;
+					next = i + 1;
+				}
+			}
+
+			if (next < 0) {
+				return null;
+			}
+
+			if (literal >= 0 && literal < 0x80) {
+				if (run.isEmpty() && literals.isEmpty()) {
+					firstAnchored = atStart;
+				}
+
+				run.append((char)literal);
+				lastLiteral = true;
+			} else {
+				flush(literals, run);
+				atStart = false;
+				lastLiteral = false;
+			}
+
+			i = next;
+		}
+
+		flush(literals, run);
+		return literals.isEmpty() ? null : new RegexLiterals(literals, firstAnchored);
+	}
+
+	/**
+	 * @return a {@code LIKE} pattern (with {@code \} as escape character) that matches at least everything the
+	 * expression {@link java.util.regex.Matcher#find() finds} a match in.
+	 */
+	String toLikePattern() {
+		StringBuilder pattern = new StringBuilder(64);
+		if (!anchored) {
+			pattern.append('%');
+		}
+
+		for (String literal : literals) {
+			for (int j = 0; j < literal.length(); j++) {
+				char c = literal.charAt(j);
+				if (c == '%' || c == '_' || c == '\\') {
+					pattern.append('\\');
+				}
+
+				pattern.append(c);
+			}
+
+			pattern.append('%');
+		}
+
+		return pattern.toString();
+	}
+
+	/**
+	 * @return an FTS5 query for a trigram index that matches at least everything the expression finds a match in,
+	 * or {@code null} when no literal is long enough to be looked up.
+	 */
+	@Nullable String toMatchQuery() {
+		StringBuilder query = new StringBuilder(64);
+
+		for (String literal : literals) {
+			if (literal.length() >= MIN_TRIGRAM_LENGTH) {
+				if (!query.isEmpty()) {
+					query.append(" AND ");
+				}
+
+				query.append('"').append(literal.replace("\"", "\"\"")).append('"');
+			}
+		}
+
+		return query.isEmpty() ? null : query.toString();
+	}
+
+	private static void flush(List<String> literals, StringBuilder run) {
+		if (!run.isEmpty()) {
+			literals.add(run.toString());
+			run.setLength(0);
+		}
+	}
+
+	private static boolean isAsciiLetterOrDigit(char c) {
+		return c >= '0' && c <= '9' || c >= 'A' && c <= 'Z' || c >= 'a' && c <= 'z';
+	}
+
+	/**
+	 * @return the index after the character class starting at {@code start}, or -1 if it can't be skipped reliably.
+	 */
+	private static int skipClass(String regex, int start) {
+		int i = start + 1;
+		if (i < regex.length() && regex.charAt(i) == '^') {
+			i++;
+		}
+
+		if (i < regex.length() && regex.charAt(i) == ']') {
+			i++;
+		}
+
+		int depth = 1;
+		while (i < regex.length()) {
+			char c = regex.charAt(i);
+			if (c == '\\') {
+				if (i + 1 < regex.length() && regex.charAt(i + 1) == 'Q') {
+					return -1;
+				}
+
+				i += 2;
+			} else if (c == '[') {
+				depth++;
+				i++;
+			} else if (c == ']') {
+				depth--;
+				i++;
+				if (depth == 0) {
+					return i;
+				}
+			} else {
+				i++;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * @return the index after the group starting at {@code start}, or -1 if it can't be skipped reliably or it sets
+	 * the {@code COMMENTS} flag, which changes the meaning of what follows.
+	 */
+	private static int skipGroup(String regex, int start) {
+		int i = start + 1;
+		if (i < regex.length() && regex.charAt(i) == '?') {
+			for (i++; i < regex.length(); i++) {
+				char c = regex.charAt(i);
+				if (c == 'x') {
+					return -1;
+				} else if (!Character.isLetter(c) && c != '-') {
+					break;
+				}
+			}
+		}
+
+		int depth = 1;
+		while (i < regex.length()) {
+			char c = regex.charAt(i);
+			if (c == '\\') {
+				if (i + 1 < regex.length() && regex.charAt(i + 1) == 'Q') {
+					return -1;
+				}
+
+				i += 2;
+			} else if (c == '[') {
+				i = skipClass(regex, i);
+				if (i < 0) {
+					return -1;
+				}
+			} else if (c == '(') {
+				depth++;
+				i++;
+			} else if (c == ')') {
+				depth--;
+				i++;
+				if (depth == 0) {
+					return i;
+				}
+			} else {
+				i++;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * @return the lower bound of the {@code {n}}, {@code {n,}} or {@code {n,m}} quantifier at {@code start}, or -1 if
+	 * it's malformed.
+	 */
+	private static int parseMinimum(String regex, int start) {
+		int i       = start + 1;
+		int minimum = 0;
+		while (i < regex.length() && Character.isDigit(regex.charAt(i))) {
+			minimum = Math.min(minimum * 10 + regex.charAt(i) - '0', 1_000_000);
+			i++;
+		}
+
+		return i == start + 1 || regex.indexOf('}', i) < 0 ? -1 : minimum;
+	}
+
+	private static int skipQuantifier(String regex, int start) {
+		int i = regex.charAt(start) == '{' ? regex.indexOf('}', start) + 1 : start + 1;
+		if (i < regex.length() && (regex.charAt(i) == '?' || regex.charAt(i) == '+')) {
+			i++;
+		}
+
+		return i;
+	}
+}
@@ -0,0 +1,67 @@
+package org.digitalmodular.maruneko.diskscanner;
+
+import static org.digitalmodular.utilities.ValidatorUtilities.requireAtLeast;
+
+/**
+ * When the scanner commits its writes. A commit happens as soon as any of the limits is reached; a limit of 0 is
+ * disabled. With all limits disabled, the whole scan is a single transaction.
+ * <p>
+ * Fewer commits mean more throughput, but more work lost when the scan is interrupted. What is committed can be
+ * {@link DiskScanner#resume() resumed} from.
+ *
+ * @param maxRows   The number of rows written since the last commit
+ * @param maxBytes  The estimated number of bytes written since the last commit, which is roughly what goes into the
+ *                  journal. The driver doesn't expose the journal size itself.
+ * @param maxMillis The time since the last commit
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+public record CommitPolicy(int maxRows,
+                           long maxBytes,
+                           long maxMillis) {
+	/**
+	 * Commits once per second, which is what the scanner always did.
+	 */
+	public static final CommitPolicy DEFAULT = everyMillis(1000);
+
+	public CommitPolicy {
+		requireAtLeast(0, maxRows, "maxRows");
+		requireAtLeast(0, maxBytes, "maxBytes");
+		requireAtLeast(0, maxMillis, "maxMillis");
+	}
+
+	public static CommitPolicy everyRows(int maxRows) {
+		return new CommitPolicy(requireAtLeast(1, maxRows, "maxRows"), 0, 0);
+	}
+
+	public static CommitPolicy everyBytes(long maxBytes) {
+		return new CommitPolicy(0, requireAtLeast(1, maxBytes, "maxBytes"), 0);
+	}
+
+	public static CommitPolicy everyMillis(long maxMillis) {
+		return new CommitPolicy(0, 0, requireAtLeast(1, maxMillis, "maxMillis"));
+	}
+
+	public static CommitPolicy singleTransaction() {
+		return new CommitPolicy(0, 0, 0);
+	}
+
+	public boolean isSingleTransaction() {
+		return maxRows == 0 && maxBytes == 0 && maxMillis == 0;
+	}
+
+	/**
+	 * @param rows          The number of rows written since the last commit
+	 * @param bytes         The estimated number of bytes written since the last commit
+	 * @param elapsedMillis The time since the last commit
+	 */
+	public boolean shouldCommit(int rows, long bytes, long elapsedMillis) {
+		if (rows == 0) {
+			return false;
+		}
+
+		return (maxRows > 0 && rows >= maxRows) ||
+		       (maxBytes > 0 && bytes >= maxBytes) ||
+		       (maxMillis > 0 && elapsedMillis >= maxMillis);
+	}
+}
@@ -0,0 +1,157 @@
+package org.digitalmodular.maruneko.diskscanner;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.jetbrains.annotations.Nullable;
+
+import static org.digitalmodular.utilities.ValidatorUtilities.requireAtLeast;
+import static org.digitalmodular.utilities.ValidatorUtilities.requireNonNull;
+
+/**
+ * The optional hashing stage of the scan pipeline. Walkers hand it regular files after queueing their entries, and a
+ * fixed pool of readers hashes them and queues the result on the {@link DatabaseWriter}, behind the entry.
+ * <p>
+ * Each reader reads through a {@link FileChannel} into its own large direct buffer, so the data is not copied onto
+ * the heap. At most twice as many files as there are readers are waiting, after which walkers block, so a scan with
+ * hashing runs at the pace of the disk reads.
+ * <p>
+ * Files that can't be read (anymore) stay unhashed.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+final class ContentHasher {
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	private final DatabaseWriter   writer;
+	private final @Nullable String strongHashAlgorithm;
+	private final ExecutorService  executor;
+	private final Semaphore        permits;
+
+	private final ThreadLocal<ByteBuffer> buffers =
+			ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
+
+	private volatile @Nullable IOException failure = null;
+
+	ContentHasher(DatabaseWriter writer, int concurrency, @Nullable String strongHashAlgorithm) {
+		this.writer              = requireNonNull(writer, "writer");
+		this.strongHashAlgorithm = strongHashAlgorithm;
+		requireAtLeast(1, concurrency, "concurrency");
+
+		executor = Executors.newFixedThreadPool(concurrency, runnable -> {
+			Thread thread = new Thread(runnable, "content-hasher");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		permits = new Semaphore(concurrency * 2);
+	}
+
+	/**
+	 * Queues a file for hashing, blocking while too many files are waiting.
+	 *
+	 * @param id The ID of the file's entry, which must already be queued for writing
+	 */
+	void hash(Path file, int id) throws IOException {
+		checkFailure();
+
+		try {
+			permits.acquire();
+		} catch (InterruptedException ignored) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while queueing " + file + " for hashing");
+		}
+
+		executor.execute(() -> {
+			try {
+				hashFile(file, id);
+			} catch (IOException ex) {
+				failure = ex;
+			} finally {
+				permits.release();
+			}
+		});
+	}
+
+	private void hashFile(Path file, int id) throws IOException {
+		@Nullable MessageDigest digest = createDigest();
+		XXHash64                xxHash = new XXHash64();
+		ByteBuffer              buffer = buffers.get();
+		long                    size   = 0;
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			while (true) {
+				buffer.clear();
+				if (channel.read(buffer) < 0) {
+					break;
+				}
+
+				buffer.flip();
+				size += buffer.remaining();
+
+				if (digest != null) {
+					digest.update(buffer.duplicate());
+				}
+
+				xxHash.update(buffer);
+			}
+		} catch (IOException ignored) {
+			// Deleted, unreadable or a read error; the entry stays unhashed
+			return;
+		}
+
+		@Nullable String strongHash = digest == null ? null : HexFormat.of().formatHex(digest.digest());
+		writer.setHash(id, xxHash.getValue(), strongHash, System.currentTimeMillis(), size);
+	}
+
+	private @Nullable MessageDigest createDigest() {
+		if (strongHashAlgorithm == null) {
+			return null;
+		}
+
+		try {
+			return MessageDigest.getInstance(strongHashAlgorithm);
+		} catch (NoSuchAlgorithmException ex) {
+			// Checked by DiskScanner.setStrongHashAlgorithm()
+			throw new AssertionError(ex);
+		}
+	}
+
+	/**
+	 * Waits for the queued files to be hashed and stops the readers.
+	 */
+	void close() throws IOException {
+		executor.shutdown();
+
+		try {
+			while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+				// Keep waiting
+			}
+		} catch (InterruptedException ignored) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the hashing to finish");
+		}
+
+		checkFailure();
+	}
+
+	private void checkFailure() throws IOException {
+		@Nullable IOException failure = this.failure;
+		if (failure != null) {
+			throw new IOException("Content hasher failed", failure);
+		}
+	}
+}
@@ -0,0 +1,138 @@
+package org.digitalmodular.maruneko.diskscanner;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
+
+import org.jetbrains.annotations.Nullable;
+
+import static org.digitalmodular.utilities.ValidatorUtilities.requireNonNull;
+
+import org.digitalmodular.maruneko.database.Database;
+import org.digitalmodular.maruneko.database.FileEntry;
+import org.digitalmodular.maruneko.database.PendingDirectory;
+
+/**
+ * Writes straight into the catalog.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+final class DatabaseSink implements ScanSink {
+	private final Database database;
+
+	DatabaseSink(Database database) {
+		this.database = requireNonNull(database, "database");
+	}
+
+	@Override
+	public void addEntries(List<FileEntry> entries) throws IOException {
+		if (entries.isEmpty()) {
+			return;
+		}
+
+		try {
+			synchronized (database) {
+				database.fileEntryTable.addValues(entries);
+			}
+		} catch (SQLException ex) {
+			throw new IOException(ex);
+		}
+	}
+
+	@Override
+	public void addPending(List<PendingDirectory> pending) throws IOException {
+		if (pending.isEmpty()) {
+			return;
+		}
+
+		try {
+			synchronized (database) {
+				database.pendingDirectoryTable.addValues(pending);
+			}
+		} catch (SQLException ex) {
+			throw new IOException(ex);
+		}
+	}
+
+	@Override
+	public void removePending(int dirID) throws IOException {
+		try {
+			synchronized (database) {
+				database.pendingDirectoryTable.deleteByDirID(dirID);
+			}
+		} catch (SQLException ex) {
+			throw new IOException(ex);
+		}
+	}
+
+	@Override
+	public void touchChildren(int parentID, long timestamp) throws IOException {
+		try {
+			synchronized (database) {
+				database.fileEntryTable.touchChildren(parentID, timestamp);
+			}
+		} catch (SQLException ex) {
+			throw new IOException(ex);
+		}
+	}
+
+	@Override
+	public void markDeleted(int id, long timestamp) throws IOException {
+		try {
+			synchronized (database) {
+				database.fileEntryTable.markDeleted(id, timestamp);
+			}
+		} catch (SQLException ex) {
+			throw new IOException(ex);
+		}
+	}
+
+	@Override
+	public void setHash(int id, long contentHash, @Nullable String strongHash, long hashedTimestamp)
+			throws IOException {
+		try {
+			synchronized (database) {
+				database.fileEntryTable.setHash(id, contentHash, strongHash, hashedTimestamp);
+			}
+		} catch (SQLException ex) {
+			throw new IOException(ex);
+		}
+	}
+
+	/**
+	 * Does nothing, as the frontier being empty already marks the scan as complete.
+	 */
+	@Override
+	public void finish() {
+	}
+
+	@Override
+	public void commit() throws IOException {
+		try {
+			synchronized (database) {
+				database.commit();
+			}
+		} catch (SQLException ex) {
+			throw new IOException(ex);
+		}
+	}
+
+	@Override
+	public void rollback() throws IOException {
+		try {
+			synchronized (database) {
+				database.rollback();
+			}
+		} catch (SQLException ex) {
+			throw new IOException(ex);
+		}
+	}
+
+	/**
+	 * Does nothing, as the database stays open.
+	 */
+	@Override
+	public void close() {
+	}
+}
@@ -0,0 +1,368 @@
+package org.digitalmodular.maruneko.diskscanner;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.jetbrains.annotations.Nullable;
+
+import static org.digitalmodular.utilities.ValidatorUtilities.requireAtLeast;
+import static org.digitalmodular.utilities.ValidatorUtilities.requireNonNull;
+
+import org.digitalmodular.maruneko.database.FileEntry;
+import org.digitalmodular.maruneko.database.PendingDirectory;
+
+/**
+ * The consumer end of the scan pipeline: a single thread that drains a bounded queue of entries into a
+ * {@link ScanSink}, normally the database.
+ * <p>
+ * Walkers only block on this writer when the queue is full, so filesystem access and database writes overlap. The
+ * entries must already have their ID assigned, as walkers need them as parentID for the children they find.
+ * Operations are applied in the order they are queued, and commits only happen between batches, as the
+ * {@link CommitPolicy} says. Every commit
+ * therefore holds a prefix of the queued operations, which is what makes the {@link PendingDirectory scan frontier}
+ * resumable.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+final class DatabaseWriter implements Runnable {
+	public static final int DEFAULT_QUEUE_CAPACITY = 65536;
+
+	private static final int MAX_BATCH_SIZE = 4096;
+	private static final int POLL_MILLIS    = 100;
+
+	/**
+	 * The estimated size of a row without its strings, for {@link CommitPolicy#maxBytes()}.
+	 */
+	private static final int ROW_OVERHEAD_BYTES = 96;
+
+	private sealed interface Operation
+			permits EntryOperation,
+			        TouchChildrenOperation,
+			        MarkDeletedOperation,
+			        RemovePendingOperation,
+			        HashOperation {
+	}
+
+	/**
+	 * @param file    Where the entry was found, for the progress output, which can't look up paths in the catalog
+	 *                while the writer is using it.
+	 * @param changed {@code false} when the catalog already holds this exact entry, which then only counts as
+	 *                progress.
+	 * @param pending The frontier row of a directory that is yet to be listed, written in the same transaction as the
+	 *                entry.
+	 */
+	private record EntryOperation(FileEntry entry, Path file, boolean changed, @Nullable PendingDirectory pending)
+			implements Operation {
+	}
+
+	private record TouchChildrenOperation(int parentID, long timestamp) implements Operation {
+	}
+
+	private record MarkDeletedOperation(int id, long timestamp) implements Operation {
+	}
+
+	private record RemovePendingOperation(int dirID) implements Operation {
+	}
+
+	/**
+	 * @param size The number of bytes that were hashed, which only counts as progress.
+	 */
+	private record HashOperation(int id, long contentHash, @Nullable String strongHash, long hashedTimestamp, long size)
+			implements Operation {
+	}
+
+	private final ScanSink                 sink;
+	private final ProgressTracker          progressTracker;
+	private final CommitPolicy             commitPolicy;
+	private final BlockingQueue<Operation> queue;
+	private final Thread                   thread;
+
+	private final @Nullable ScanStatistics statistics;
+
+	// Only used by the writer thread
+	private int  rowsSinceCommit  = 0;
+	private long bytesSinceCommit = 0;
+	private long lastCommitMillis = System.currentTimeMillis();
+
+	private volatile           boolean   finished = false;
+	private volatile           boolean   closed   = false;
+	private volatile @Nullable Exception failure  = null;
+
+	/**
+	 * @param statistics When not {@code null}, the writer records its timings and queue depth in it.
+	 */
+	DatabaseWriter(ScanSink sink,
+	               ProgressTracker progressTracker,
+	               CommitPolicy commitPolicy,
+	               int queueCapacity,
+	               @Nullable ScanStatistics statistics) {
+		this.sink            = requireNonNull(sink, "sink");
+		this.progressTracker = requireNonNull(progressTracker, "progressTracker");
+		this.commitPolicy    = requireNonNull(commitPolicy, "commitPolicy");
+		this.statistics      = statistics;
+		requireAtLeast(1, queueCapacity, "queueCapacity");
+
+		queue  = new ArrayBlockingQueue<>(queueCapacity);
+		thread = new Thread(this, "db-writer");
+	}
+
+	void start() {
+		thread.start();
+	}
+
+	/**
+	 * Queues an entry for writing, blocking while the queue is full.
+	 */
+	void write(FileEntry entry, Path file) throws IOException {
+		write(entry, file, null);
+	}
+
+	/**
+	 * Queues an entry for writing, blocking while the queue is full.
+	 *
+	 * @param pending When not {@code null}, the entry is a directory that still has to be listed, and is added to the
+	 *                frontier together with the entry.
+	 */
+	void write(FileEntry entry, Path file, @Nullable PendingDirectory pending) throws IOException {
+		requireNonNull(entry, "entry");
+		requireNonNull(file, "file");
+		if (entry.id() == 0) {
+			throw new IllegalArgumentException("Entry has no ID: " + entry);
+		}
+
+		enqueue(new EntryOperation(entry, file, true, pending));
+	}
+
+	/**
+	 * Records an entry that was found unchanged, without writing it.
+	 */
+	void skip(FileEntry entry, Path file) throws IOException {
+		skip(entry, file, null);
+	}
+
+	/**
+	 * Records an entry that was found unchanged, without writing it.
+	 *
+	 * @param pending See {@link #write(FileEntry, Path, PendingDirectory)}
+	 */
+	void skip(FileEntry entry, Path file, @Nullable PendingDirectory pending) throws IOException {
+		requireNonNull(entry, "entry");
+		requireNonNull(file, "file");
+
+		enqueue(new EntryOperation(entry, file, false, pending));
+	}
+
+	/**
+	 * Queues a {@link org.digitalmodular.maruneko.database.FileEntryTable#touchChildren(int, long)}.
+	 */
+	void touchChildren(int parentID, long timestamp) throws IOException {
+		enqueue(new TouchChildrenOperation(parentID, timestamp));
+	}
+
+	/**
+	 * Queues a {@link org.digitalmodular.maruneko.database.FileEntryTable#markDeleted(int, long)}.
+	 */
+	void markDeleted(int id, long timestamp) throws IOException {
+		enqueue(new MarkDeletedOperation(id, timestamp));
+	}
+
+	/**
+	 * Queues the removal of a directory from the frontier, after everything that was queued for its children.
+	 */
+	void removePending(int dirID) throws IOException {
+		enqueue(new RemovePendingOperation(dirID));
+	}
+
+	/**
+	 * Queues the hashes of a file, which must be queued after its entry.
+	 */
+	void setHash(int id, long contentHash, @Nullable String strongHash, long hashedTimestamp, long size)
+			throws IOException {
+		enqueue(new HashOperation(id, contentHash, strongHash, hashedTimestamp, size));
+	}
+
+	private void enqueue(Operation operation) throws IOException {
+		try {
+			while (!queue.offer(operation, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+				checkFailure();
+			}
+		} catch (InterruptedException ignored) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while queueing " + operation);
+		}
+	}
+
+	/**
+	 * Marks the scan as complete, once everything is queued. The sink is then {@link ScanSink#finish() finished}
+	 * after the last write. Without this, a closed writer leaves the output as an interrupted scan.
+	 */
+	void finish() {
+		finished = true;
+	}
+
+	/**
+	 * Writes the remaining queued entries, commits, and waits for the writer thread to end.
+	 */
+	void close() throws IOException {
+		closed = true;
+
+		try {
+			thread.join();
+		} catch (InterruptedException ignored) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the writer to finish");
+		}
+
+		checkFailure();
+	}
+
+	@Override
+	public void run() {
+		List<Operation> batch = new ArrayList<>(MAX_BATCH_SIZE);
+
+		try {
+			while (true) {
+				@Nullable Operation first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					if (closed && queue.isEmpty()) {
+						break;
+					}
+
+					// Also commit when the walkers are slow to produce, so the time limit holds
+					commitIfDue();
+					continue;
+				}
+
+				batch.add(first);
+				queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+
+				@Nullable ScanStatistics statistics = this.statistics;
+				if (statistics != null) {
+					statistics.recordQueueDepth(batch.size() + queue.size());
+
+					long start = System.nanoTime();
+					writeBatch(batch);
+					statistics.recordWrite(System.nanoTime() - start);
+				} else {
+					writeBatch(batch);
+				}
+
+				batch.clear();
+
+				commitIfDue();
+			}
+
+			progressTracker.recordDone();
+			if (finished) {
+				sink.finish();
+			}
+
+			sink.commit();
+		} catch (IOException | InterruptedException | RuntimeException ex) {
+			failure = ex;
+			queue.clear();
+
+			try {
+				sink.rollback();
+			} catch (IOException ex2) {
+				ex2.printStackTrace();
+			}
+		} finally {
+			try {
+				sink.close();
+			} catch (IOException ex) {
+				if (failure == null) {
+					failure = ex;
+				}
+			}
+		}
+	}
+
+	private void writeBatch(Iterable<Operation> batch) throws IOException {
+		List<FileEntry>        entries = new ArrayList<>(MAX_BATCH_SIZE);
+		List<PendingDirectory> pending = new ArrayList<>(64);
+
+		for (Operation operation : batch) {
+			if (operation instanceof EntryOperation entryOperation) {
+				if (entryOperation.changed()) {
+					entries.add(entryOperation.entry());
+					countRow(entryOperation.entry().name());
+				}
+
+				@Nullable PendingDirectory pendingDirectory = entryOperation.pending();
+				if (pendingDirectory != null) {
+					pending.add(pendingDirectory);
+					countRow(pendingDirectory.path());
+				}
+
+				progressTracker.recordProgress(entryOperation.entry(), entryOperation.file());
+				continue;
+			}
+
+			countRow("");
+
+			// Keep the queue order: flush the entries before anything that may refer to them
+			flushEntries(entries, pending);
+
+			if (operation instanceof TouchChildrenOperation touch) {
+				sink.touchChildren(touch.parentID(), touch.timestamp());
+			} else if (operation instanceof MarkDeletedOperation delete) {
+				sink.markDeleted(delete.id(), delete.timestamp());
+			} else if (operation instanceof RemovePendingOperation remove) {
+				sink.removePending(remove.dirID());
+			} else if (operation instanceof HashOperation hash) {
+				sink.setHash(hash.id(), hash.contentHash(), hash.strongHash(), hash.hashedTimestamp());
+				progressTracker.recordHashed(hash.size());
+			}
+		}
+
+		flushEntries(entries, pending);
+	}
+
+	private void countRow(String text) {
+		rowsSinceCommit++;
+		bytesSinceCommit += ROW_OVERHEAD_BYTES + text.length();
+	}
+
+	private void commitIfDue() throws IOException {
+		long now = System.currentTimeMillis();
+		if (!commitPolicy.shouldCommit(rowsSinceCommit, bytesSinceCommit, now - lastCommitMillis)) {
+			return;
+		}
+
+		long start = System.nanoTime();
+		sink.commit();
+
+		@Nullable ScanStatistics statistics = this.statistics;
+		if (statistics != null) {
+			statistics.recordCommit(System.nanoTime() - start);
+		}
+
+		rowsSinceCommit  = 0;
+		bytesSinceCommit = 0;
+		lastCommitMillis = now;
+	}
+
+	private void flushEntries(List<FileEntry> entries, List<PendingDirectory> pending) throws IOException {
+		sink.addEntries(entries);
+		entries.clear();
+
+		// After the entries, as the frontier refers to them
+		sink.addPending(pending);
+		pending.clear();
+	}
+
+	private void checkFailure() throws IOException {
+		@Nullable Exception failure = this.failure;
+		if (failure != null) {
+			throw new IOException("Database writer failed", failure);
+		}
+	}
+}
@@ -0,0 +1,353 @@
+package org.digitalmodular.maruneko.diskscanner;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Serial;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+
+import org.jetbrains.annotations.Nullable;
+
+import static org.digitalmodular.utilities.ValidatorUtilities.requireAtLeast;
+import static org.digitalmodular.utilities.ValidatorUtilities.requireNonNull;
+
+import org.digitalmodular.maruneko.database.FileEntry;
+import org.digitalmodular.maruneko.database.PendingDirectory;
+
+/**
+ * Walks a directory tree with a work-stealing pool, using one task per directory. With a parallelism of 1 this visits
+ * the tree depth-first on a single thread.
+ * <p>
+ * Each task lists a single directory, records its children and forks a new task for every subdirectory. A directory
+ * entry is always queued before its children, so the parent/child structure is the same as {@link Files#walkFileTree}
+ * produces. Unlike {@code walkFileTree}, every child is read with {@link ScanAttributes#read(Path)}, so its inode,
+ * device and link count come from the same stat call as its size and timestamps.
+ * <p>
+ * With a {@link DiskScanner#setMetadataConcurrency(int) metadata concurrency} above 1, the attributes of the children
+ * of a directory are read by a separate pool, keeping that many reads in flight. The results are still handled in
+ * listing order by the directory's own task.
+ * <p>
+ * Children matching the {@link DiskScanner#setExclusions(ScanExclusions) exclusions} are dropped before their
+ * attributes are read.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+final class DirectoryWalker {
+	private record AttributeRead(Path child, Future<ScanAttributes> future) {
+	}
+
+	private final DiskScanner    scanner;
+	private final Object         firstDevice;
+	private final int            firstVolumeID;
+	private final int            metadataConcurrency;
+	private final ScanExclusions exclusions;
+
+	private final @Nullable ScanStatistics statistics;
+
+	private @Nullable ExecutorService metadataExecutor = null;
+
+	DirectoryWalker(DiskScanner scanner, Object firstDevice, int firstVolumeID) {
+		this.scanner       = requireNonNull(scanner, "scanner");
+		this.firstDevice   = requireNonNull(firstDevice, "firstDevice");
+		this.firstVolumeID = requireAtLeast(1, firstVolumeID, "firstVolumeID");
+
+		metadataConcurrency = scanner.getMetadataConcurrency();
+		exclusions          = scanner.getExclusions();
+		statistics          = scanner.getStatistics();
+	}
+
+	/**
+	 * Walks the trees below directories that are already recorded and in the frontier. None of them may be below
+	 * another.
+	 */
+	void walk(Iterable<PendingDirectory> roots, int parallelism) throws IOException {
+		List<DirectoryTask> tasks = new ArrayList<>(16);
+		for (PendingDirectory root : roots) {
+			tasks.add(new DirectoryTask(Paths.get(root.path()), root.dirID(), root.remainingDepth(), false));
+		}
+
+		invoke(tasks, parallelism);
+	}
+
+	private void invoke(List<DirectoryTask> tasks, int parallelism) throws IOException {
+		requireAtLeast(1, parallelism, "parallelism");
+
+		if (metadataConcurrency > 1) {
+			metadataExecutor = Executors.newFixedThreadPool(metadataConcurrency, runnable -> {
+				Thread thread = new Thread(runnable, "metadata-reader");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+		} catch (UncheckedIOException ex) {
+			throw ex.getCause();
+		} finally {
+			pool.shutdown();
+
+			if (metadataExecutor != null) {
+				metadataExecutor.shutdownNow();
+				metadataExecutor = null;
+			}
+		}
+	}
+
+	private ScanAttributes readAttributes(Path file) throws IOException {
+		ScanThrottle throttle = scanner.getThrottle();
+		throttle.acquireStat();
+
+		long           start = System.nanoTime();
+		ScanAttributes attrs = ScanAttributes.read(file);
+
+		long latencyNanos = System.nanoTime() - start;
+		throttle.recordStat(latencyNanos);
+
+		if (statistics != null) {
+			statistics.recordStat(latencyNanos);
+		}
+
+		return attrs;
+	}
+
+	/**
+	 * Lists a directory that is already recorded. Its subdirectories are recorded by this task, before their own
+	 * task is forked, so all children of one directory are matched against the catalog in one place.
+	 * <p>
+	 * Each subdirectory is added to the frontier together with its entry, and a directory is removed from it after
+	 * everything of its children is queued. A directory of which the removal is committed is therefore complete up to
+	 * its subdirectories, which are either complete or in the frontier themselves.
+	 */
+	private final class DirectoryTask extends RecursiveAction {
+		@Serial
+		private static final long serialVersionUID = 1L;
+
+		private final Path    dir;
+		private final int     dirID;
+		/**
+		 * The number of levels to scan below this directory, counting its children as the first.
+		 */
+		private final int     remainingDepth;
+		/**
+		 * Whether the directory is unchanged since the last scan and its catalogued children can be used instead.
+		 */
+		private final boolean skipListing;
+
+		DirectoryTask(Path dir, int dirID, int remainingDepth, boolean skipListing) {
+			this.dir            = dir;
+			this.dirID          = dirID;
+			this.remainingDepth = remainingDepth;
+			this.skipListing    = skipListing;
+		}
+
+		@Override
+		protected void compute() {
+			try {
+				List<DirectoryTask> subTasks = visitDirectory();
+				scanner.removePending(dirID);
+				invokeAll(subTasks);
+			} catch (IOException ex) {
+				throw new UncheckedIOException(ex);
+			}
+		}
+
+		private List<DirectoryTask> visitDirectory() throws IOException {
+			if (skipListing) {
+				return reuseListing();
+			}
+
+			scanner.getThrottle().acquireDirectory();
+
+			long                  start = System.nanoTime();
+			DirectoryStream<Path> stream;
+			try {
+				stream = Files.newDirectoryStream(dir);
+			} catch (IOException ignored) {
+				// The directory itself is already recorded; its children stay as they were
+				return Collections.emptyList();
+			}
+
+			if (statistics != null) {
+				statistics.recordOpenDirectory(System.nanoTime() - start);
+			}
+
+			Map<String, FileEntry> cataloged = scanner.getCatalogedChildren(dirID);
+			List<DirectoryTask>    subTasks  = new ArrayList<>(16);
+
+			// Excluded children are not visited, and therefore stay behind in cataloged
+			try (stream) {
+				visitChildren(stream, cataloged, subTasks);
+			} catch (DirectoryIteratorException ignored) {
+				// Same as walkFileTree: keep what was listed so far, but don't treat the rest as deleted
+				return subTasks;
+			}
+
+			scanner.finishDirectory(dirID, cataloged);
+			return subTasks;
+		}
+
+		private List<DirectoryTask> reuseListing() throws IOException {
+			Map<String, FileEntry> cataloged = scanner.getCatalogedChildren(dirID);
+			List<DirectoryTask>    subTasks  = new ArrayList<>(16);
+			Map<String, FileEntry> excluded  = takeExcluded(cataloged);
+
+			List<Path> subdirectories = new ArrayList<>(16);
+			for (FileEntry subdirectory : scanner.reuseCatalogedFiles(dir, cataloged)) {
+				subdirectories.add(dir.resolve(subdirectory.name()));
+			}
+
+			visitChildren(subdirectories, cataloged, subTasks);
+
+			cataloged.putAll(excluded);
+			scanner.finishDirectory(dirID, cataloged);
+			return subTasks;
+		}
+
+		/**
+		 * Takes the children that are excluded by now out of the catalogued ones, so they aren't reused.
+		 */
+		private Map<String, FileEntry> takeExcluded(Map<String, FileEntry> cataloged) {
+			if (exclusions.isEmpty()) {
+				return Collections.emptyMap();
+			}
+
+			Map<String, FileEntry> excluded = new HashMap<>(4);
+			for (Iterator<FileEntry> iter = cataloged.values().iterator(); iter.hasNext(); ) {
+				FileEntry child = iter.next();
+				if (exclusions.isExcluded(dir.resolve(child.name()))) {
+					iter.remove();
+					excluded.put(child.name(), child);
+				}
+			}
+
+			return excluded;
+		}
+
+		private void visitChildren(Iterable<Path> children,
+		                           Map<String, FileEntry> cataloged,
+		                           List<DirectoryTask> subTasks) throws IOException {
+			@Nullable ExecutorService executor = metadataExecutor;
+			if (executor == null) {
+				for (Path child : children) {
+					if (exclusions.isExcluded(child)) {
+						continue;
+					}
+
+					ScanAttributes attrs;
+					try {
+						attrs = readAttributes(child);
+					} catch (IOException ex) {
+						scanner.handleVisitFailure(child, firstVolumeID, dirID, ex, cataloged);
+						continue;
+					}
+
+					visitChild(child, attrs, cataloged, subTasks);
+				}
+
+				return;
+			}
+
+			// Keep the pool busy, but don't run further ahead of the oldest read than that
+			Deque<AttributeRead> inFlight = new ArrayDeque<>(metadataConcurrency);
+			try {
+				for (Path child : children) {
+					if (exclusions.isExcluded(child)) {
+						continue;
+					}
+
+					inFlight.add(new AttributeRead(child, executor.submit(() -> readAttributes(child))));
+
+					if (inFlight.size() >= metadataConcurrency) {
+						finishRead(inFlight.remove(), cataloged, subTasks);
+					}
+				}
+			} catch (IOException | RuntimeException ex) {
+				// Still wait for the reads that were started, without letting their failures replace this one
+				while (!inFlight.isEmpty()) {
+					try {
+						finishRead(inFlight.remove(), cataloged, subTasks);
+					} catch (IOException | RuntimeException ex2) {
+						ex.addSuppressed(ex2);
+					}
+				}
+
+				throw ex;
+			}
+
+			while (!inFlight.isEmpty()) {
+				finishRead(inFlight.remove(), cataloged, subTasks);
+			}
+		}
+
+		private void finishRead(AttributeRead read, Map<String, FileEntry> cataloged, List<DirectoryTask> subTasks)
+				throws IOException {
+			ScanAttributes attrs;
+			try {
+				attrs = read.future().get();
+			} catch (InterruptedException ignored) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while reading the attributes of " + read.child());
+			} catch (ExecutionException ex) {
+				if (ex.getCause() instanceof IOException cause) {
+					scanner.handleVisitFailure(read.child(), firstVolumeID, dirID, cause, cataloged);
+					return;
+				}
+
+				throw new IOException(ex.getCause());
+			}
+
+			visitChild(read.child(), attrs, cataloged, subTasks);
+		}
+
+		private void visitChild(Path child,
+		                        ScanAttributes attrs,
+		                        Map<String, FileEntry> cataloged,
+		                        List<DirectoryTask> subTasks) throws IOException {
+			if (!attrs.isDirectory() || remainingDepth <= 1) {
+				scanner.addFileEntry(child, firstVolumeID, dirID, attrs, cataloged);
+				return;
+			}
+
+			// Directories on other devices are skipped, so the parent is always on the first device
+			Object device = attrs.getDeviceKey(child);
+			if (!device.equals(firstDevice)) {
+				scanner.skipOtherDevice(child, device, cataloged);
+				return;
+			}
+
+			@Nullable FileEntry existing = cataloged.get(DiskScanner.getName(child));
+			FileEntry           entry    = scanner.addDirectoryEntry(child,
+			                                                         firstVolumeID,
+			                                                         dirID,
+			                                                         attrs,
+			                                                         cataloged,
+			                                                         remainingDepth - 1);
+			subTasks.add(new DirectoryTask(child,
+			                               entry.id(),
+			                               remainingDepth - 1,
+			                               scanner.canSkipListing(existing, entry)));
+		}
+	}
+}
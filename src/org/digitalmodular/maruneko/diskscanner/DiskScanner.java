@@ -1,27 +1,43 @@
 package org.digitalmodular.maruneko.diskscanner;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.file.AccessDeniedException;
+import java.nio.file.FileStore;
 import java.nio.file.FileSystemLoopException;
-import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
-import java.nio.file.LinkOption;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
-import java.nio.file.SimpleFileVisitor;
-import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.jetbrains.annotations.Nullable;
 
+import static org.digitalmodular.utilities.ValidatorUtilities.requireAtLeast;
 import static org.digitalmodular.utilities.ValidatorUtilities.requireNonNull;
 
 import org.digitalmodular.maruneko.database.Database;
+import org.digitalmodular.maruneko.database.DirectoryAggregate;
 import org.digitalmodular.maruneko.database.FileEntry;
 import org.digitalmodular.maruneko.database.FileType;
+import org.digitalmodular.maruneko.database.PendingDirectory;
 import org.digitalmodular.maruneko.database.Volume;
 
 /**
@@ -36,10 +52,254 @@ public class DiskScanner {
 
 	private final Database database;
 
+	/**
+	 * The number of threads to walk the tree with.
+	 */
+	private int     parallelism         = 1;
+	private int     metadataConcurrency = 1;
+	private int     queueCapacity       = DatabaseWriter.DEFAULT_QUEUE_CAPACITY;
+	private int     hashConcurrency     = 0;
+	private boolean incremental         = false;
+	private boolean verifyAll           = false;
+	private boolean benchmark           = false;
+	private boolean collectStatistics   = false;
+	private boolean deferIndexes        = true;
+
+	private CommitPolicy   commitPolicy = CommitPolicy.DEFAULT;
+	private ScanThrottle   throttle     = new ScanThrottle();
+	private ScanExclusions exclusions   = ScanExclusions.NONE;
+
+	private @Nullable String         strongHashAlgorithm = null;
+	private @Nullable Path           scanLog             = null;
+	private @Nullable DatabaseWriter writer              = null;
+	private @Nullable ContentHasher  hasher              = null;
+	private @Nullable ScanStatistics statistics          = null;
+
+	/**
+	 * While {@link #resume() resuming}, the frontier that is being resumed from, by dirID. These directories are
+	 * never skipped, as their catalogued children may be incomplete. Empty otherwise.
+	 */
+	private Set<Integer> resumeFrontier = Collections.emptySet();
+
+	/**
+	 * Volumes seen during the current scan, by {@link VolumeUtilities#getDeviceKey(Path) device key}.
+	 */
+	private final Map<Object, Volume> volumeCache = new ConcurrentHashMap<>(16);
+
 	public DiskScanner(Database database) {
 		this.database = requireNonNull(database, "database");
 	}
 
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	public void setParallelism(int parallelism) {
+		this.parallelism = requireAtLeast(1, parallelism, "parallelism");
+	}
+
+	public int getMetadataConcurrency() {
+		return metadataConcurrency;
+	}
+
+	/**
+	 * Sets the maximum number of file attribute reads each walker keeps in flight. With 1 (the default), the walker
+	 * threads read attributes themselves, one at a time.
+	 * <p>
+	 * On network filesystems (NFS, SMB) every read is a round trip, and a walk mostly waits. Values in the hundreds
+	 * keep the server busy instead, while the entries are still queued in listing order.
+	 */
+	public void setMetadataConcurrency(int metadataConcurrency) {
+		this.metadataConcurrency = requireAtLeast(1, metadataConcurrency, "metadataConcurrency");
+	}
+
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	/**
+	 * Sets the maximum number of entries the walkers may run ahead of the database writer.
+	 */
+	public void setQueueCapacity(int queueCapacity) {
+		this.queueCapacity = requireAtLeast(1, queueCapacity, "queueCapacity");
+	}
+
+	public int getHashConcurrency() {
+		return hashConcurrency;
+	}
+
+	/**
+	 * Sets the number of files of which the contents are hashed at once, or 0 (the default) to not read the contents.
+	 * Regular files get a {@link FileEntry#contentHash() xxHash64} and optionally a
+	 * {@link #setStrongHashAlgorithm(String) strong hash}. On {@link #setIncremental(boolean) incremental} scans, only
+	 * files that changed or were never hashed are read.
+	 */
+	public void setHashConcurrency(int hashConcurrency) {
+		this.hashConcurrency = requireAtLeast(0, hashConcurrency, "hashConcurrency");
+	}
+
+	public @Nullable String getStrongHashAlgorithm() {
+		return strongHashAlgorithm;
+	}
+
+	/**
+	 * Sets the {@link MessageDigest} algorithm (e.g. {@code "SHA-256"}) for the {@link FileEntry#strongHash() strong
+	 * hash} that is computed alongside the content hash, or {@code null} (the default) for none.
+	 *
+	 * @throws IllegalArgumentException when the algorithm is not available.
+	 */
+	public void setStrongHashAlgorithm(@Nullable String strongHashAlgorithm) {
+		if (strongHashAlgorithm != null) {
+			try {
+				MessageDigest.getInstance(strongHashAlgorithm);
+			} catch (NoSuchAlgorithmException ex) {
+				throw new IllegalArgumentException(ex.getMessage(), ex);
+			}
+		}
+
+		this.strongHashAlgorithm = strongHashAlgorithm;
+	}
+
+	public boolean isIncremental() {
+		return incremental;
+	}
+
+	/**
+	 * When set, entries already in the catalog are matched by parent and name. Only new entries and entries of which
+	 * the type, size, creation time or modification time changed are written. Unchanged entries only get their
+	 * last-seen time updated (one statement per directory), and entries that disappeared are marked as deleted.
+	 * <p>
+	 * Access times are not compared, as merely reading a file would otherwise count as a change.
+	 */
+	public void setIncremental(boolean incremental) {
+		this.incremental = incremental;
+	}
+
+	public boolean isVerifyAll() {
+		return verifyAll;
+	}
+
+	/**
+	 * On {@link #setIncremental(boolean) incremental} scans, a directory of which the modification time didn't change
+	 * since the last scan is not listed again. Its catalogued files are reused as-is and only its subdirectories are
+	 * visited (which are then checked the same way). Files that were modified in-place are not detected this way.
+	 * <p>
+	 * Set this to always list every directory, for filesystems with unreliable directory modification times.
+	 */
+	public void setVerifyAll(boolean verifyAll) {
+		this.verifyAll = verifyAll;
+	}
+
+	public boolean isDeferIndexes() {
+		return deferIndexes;
+	}
+
+	/**
+	 * When set (the default), scans that aren't {@link #setIncremental(boolean) incremental} drop the secondary
+	 * indexes of the catalog while writing, and rebuild them in one pass at the end. This is faster for scans that
+	 * write most of the catalog, and slower for scans of a small part of a large catalog.
+	 * <p>
+	 * Lookups by name, type, size or volume are slow until the scan is done. When the scan fails, the indexes are
+	 * rebuilt the next time the catalog is opened.
+	 */
+	public void setDeferIndexes(boolean deferIndexes) {
+		this.deferIndexes = deferIndexes;
+	}
+
+	public CommitPolicy getCommitPolicy() {
+		return commitPolicy;
+	}
+
+	/**
+	 * Sets when the entries found so far are committed. Only committed work survives a crash, and can be
+	 * {@link #resume() resumed} from.
+	 */
+	public void setCommitPolicy(CommitPolicy commitPolicy) {
+		this.commitPolicy = requireNonNull(commitPolicy, "commitPolicy");
+	}
+
+	/**
+	 * Returns the throttle the walkers use. Its settings can be changed while scanning.
+	 */
+	public ScanThrottle getThrottle() {
+		return throttle;
+	}
+
+	/**
+	 * Sets the throttle the walkers use, for instance to share one between scanners on the same disk. A new scanner
+	 * has its own throttle without limits.
+	 */
+	public void setThrottle(ScanThrottle throttle) {
+		this.throttle = requireNonNull(throttle, "throttle");
+	}
+
+	public ScanExclusions getExclusions() {
+		return exclusions;
+	}
+
+	/**
+	 * Sets the paths to leave out of scans. Excluded files and directories are not recorded, and excluded
+	 * directories are not listed. On {@link #setIncremental(boolean) incremental} scans, their catalogued entries are
+	 * marked as deleted. The roots passed to {@link #scan(Collection, int)} themselves are always scanned.
+	 */
+	public void setExclusions(ScanExclusions exclusions) {
+		this.exclusions = requireNonNull(exclusions, "exclusions");
+	}
+
+	public boolean isBenchmark() {
+		return benchmark;
+	}
+
+	/**
+	 * When set, scans walk the filesystem and read attributes as usual, but discard what they find instead of writing
+	 * it, and always collect {@link ScanStatistics} (printed at the end). This is the baseline without writes:
+	 * comparing with a normal scan that {@link #setCollectStatistics(boolean) collects statistics} shows how much time
+	 * goes into the writes, and comparing benchmarks shows what the walk settings do on a given filesystem.
+	 * <p>
+	 * The catalog still gets the volumes and the parents of the roots, and is still read for
+	 * {@link #setIncremental(boolean) incremental} matching. The {@link #setScanLog(Path) scan log} is not written.
+	 */
+	public void setBenchmark(boolean benchmark) {
+		this.benchmark = benchmark;
+	}
+
+	public boolean isCollectStatistics() {
+		return collectStatistics;
+	}
+
+	/**
+	 * When set, scans and resumes collect {@link ScanStatistics}, including the timings of the writes, and print them
+	 * at the end. Collecting them costs a few clock reads per file.
+	 */
+	public void setCollectStatistics(boolean collectStatistics) {
+		this.collectStatistics = collectStatistics;
+	}
+
+	/**
+	 * @return the statistics of the current or last scan when it {@link #setCollectStatistics(boolean) collected}
+	 * them or was a {@link #setBenchmark(boolean) benchmark}, or {@code null} otherwise.
+	 */
+	public @Nullable ScanStatistics getStatistics() {
+		return statistics;
+	}
+
+	public @Nullable Path getScanLog() {
+		return scanLog;
+	}
+
+	/**
+	 * When set, scans write the entries they find to this {@link ScanLog} instead of the catalog, which is then
+	 * limited only by how fast the filesystem can be read. {@link ScanLog#load(Path, Database)} imports it into the
+	 * catalog afterwards. An existing log is overwritten.
+	 * <p>
+	 * The catalog still gets the volumes and the parents of the roots, and is still used for
+	 * {@link #setIncremental(boolean) incremental} matching. Such a scan can't be {@link #resume() resumed}, but a log
+	 * that was cut short can still be loaded up to where it ends.
+	 */
+	public void setScanLog(@Nullable Path scanLog) {
+		this.scanLog = scanLog;
+	}
+
 	/**
 	 * Scans a file or directory tree, adding found entries to the database.
 	 * <p>
@@ -54,124 +314,444 @@ public class DiskScanner {
 	/**
 	 * Scans a file or directory tree, adding found entries to the database.
 	 * <p>
-	 * Symlinks are never followed.
+	 * Symlinks are never followed. When {@link #setParallelism(int) parallelism} is more than 1, directories are
+	 * listed concurrently and the order in which entries are added (and hence their IDs) is not deterministic.
 	 *
 	 * @param start    The file to scan or directory to start scanning at
 	 * @param maxDepth The number of levels to recurse (1 = scan specified Path only)
 	 */
 	public FileEntry scan(Path start, int maxDepth) throws IOException {
-		Path searchRoot = start.toAbsolutePath();
+		return scan(Collections.singletonList(start), maxDepth).get(0);
+	}
 
-		ProgressTracker progressTracker = new ProgressTracker();
+	/**
+	 * Scans multiple file or directory trees into the catalog at once, adding found entries to the database.
+	 * <p>
+	 * The roots are grouped by the device they are on, and each device is walked by its own walker (with
+	 * {@link #setParallelism(int) parallelism} threads), concurrently with the other devices. A walker doesn't cross
+	 * into other devices, so those are only scanned when they are (below) a root themselves. Roots that are below
+	 * another root on the same device are already covered by it, and are not walked separately.
+	 *
+	 * @param starts   The files to scan or directories to start scanning at
+	 * @param maxDepth The number of levels to recurse (1 = scan specified Path only)
+	 * @return the entries of the roots, in the same order
+	 */
+	public List<FileEntry> scan(Collection<Path> starts, int maxDepth) throws IOException {
+		requireNonNull(starts, "starts");
+		requireAtLeast(0, maxDepth, "maxDepth");
 
-		FileEntry firstEntry = addParents(searchRoot);
+		volumeCache.clear();
 
-		int firstParentID = firstEntry.id();
-		int firstVolumeID = getOrAddVolume(searchRoot).id();
+		List<FileEntry>                     rootEntries   = new ArrayList<>(starts.size());
+		Map<Object, List<PendingDirectory>> rootsByDevice = new HashMap<>(4);
 
-		System.out.println("firstVolumeID = " + firstVolumeID);
+		for (Path start : starts) {
+			Path searchRoot = start.toAbsolutePath();
 
-		List<Integer> volumeStack = new ArrayList<>(32);
-		List<Integer> parentStack = new ArrayList<>(32);
-		volumeStack.add(firstVolumeID);
-		parentStack.add(firstParentID);
-//		System.out.println("### volumeStack=" + volumeStack + "\tparentStack=" + parentStack);
+			FileEntry      rootEntry = addParents(searchRoot);
+			ScanAttributes attrs     = ScanAttributes.read(searchRoot);
+			rootEntries.add(rootEntry);
 
-		Files.walkFileTree(searchRoot, Collections.emptySet(), maxDepth, new SimpleFileVisitor<>() {
-			@Override
-			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
-				if (dir.equals(searchRoot)) {
-					return FileVisitResult.CONTINUE;
-				}
+			Object device   = attrs.getDeviceKey(searchRoot);
+			int    volumeID = getOrAddVolume(searchRoot, device).id();
 
-				int volumeID = getOrAddVolume(dir).id();
-				if (volumeID != firstVolumeID) {
-					System.out.println("Skipping root " + dir + " (firstVolumeID = " + volumeID + ')');
-					return FileVisitResult.SKIP_SUBTREE;
-				}
+			System.out.println("volumeID = " + volumeID + " for " + searchRoot);
 
-				int       parentID = parentStack.get(parentStack.size() - 1);
-				FileEntry entry    = addFileEntry(dir, volumeID, parentID, attrs);
+			if (attrs.isDirectory() && maxDepth > 0) {
+				List<PendingDirectory> roots = rootsByDevice.computeIfAbsent(device, ignored -> new ArrayList<>(4));
+				addRoot(roots, new PendingDirectory(rootEntry.id(),
+				                                    rootEntry.parentID(),
+				                                    searchRoot.toString(),
+				                                    maxDepth));
+			}
+		}
 
-				// FIXME: Don't rely on progress tracker for core logic
-				if (progressTracker.recordProgress(entry)) {
-					try {
-						database.commit();
-					} catch (SQLException ex) {
-						throw new IOException(ex);
-					}
+		@Nullable Path scanLog = benchmark ? null : this.scanLog;
+
+		// A scan log is loaded in bulk later, which defers the indexes itself
+		boolean deferIndexes = this.deferIndexes && !incremental && !benchmark && scanLog == null;
+
+		try {
+			if (scanLog == null && !benchmark) {
+				for (List<PendingDirectory> roots : rootsByDevice.values()) {
+					database.pendingDirectoryTable.addValues(roots);
 				}
+			}
+
+			if (deferIndexes) {
+				database.fileEntryTable.dropIndexes();
+			}
 
-				volumeStack.add(volumeID);
-				parentStack.add(entry.id());
-//				System.out.println(">>> volumeStack=" + volumeStack + "\tparentStack=" + parentStack);
+			database.commit();
+		} catch (SQLException ex) {
+			throw new IOException(ex);
+		}
+
+		ScanSink sink;
+		if (benchmark) {
+			sink = new NullSink();
+		} else if (scanLog != null) {
+			sink = new ScanLogWriter(scanLog);
+		} else {
+			sink = new DatabaseSink(database);
+		}
 
-				return FileVisitResult.CONTINUE;
+		statistics = benchmark || collectStatistics ? new ScanStatistics() : null;
+
+		DatabaseWriter writer = startWriter(sink, createProgressTracker(rootsByDevice));
+		try {
+			walkDevices(rootsByDevice);
+			writer.finish();
+		} finally {
+			stopWriter(writer);
+		}
+
+		if (deferIndexes) {
+			rebuildIndexes();
+		}
+
+		if (scanLog == null && !benchmark) {
+			rebuildAggregates();
+		}
+
+		printStatistics();
+
+		return rootEntries;
+	}
+
+	private void rebuildIndexes() throws IOException {
+		System.out.println("Rebuilding indexes");
+
+		try {
+			synchronized (database) {
+				database.fileEntryTable.createIndexes();
+				database.commit();
+			}
+		} catch (SQLException ex) {
+			throw new IOException(ex);
+		}
+	}
+
+	/**
+	 * Computes the directory totals again, now that the catalog holds the result of the scan.
+	 */
+	private void rebuildAggregates() throws IOException {
+		System.out.println("Computing directory totals");
+
+		try {
+			synchronized (database) {
+				database.directoryAggregateTable.rebuild();
+				database.commit();
 			}
+		} catch (SQLException ex) {
+			throw new IOException(ex);
+		}
+	}
 
-			@Override
-			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-				int volumeID = volumeStack.get(volumeStack.size() - 1);
-				int parentID = parentStack.get(parentStack.size() - 1);
+	/**
+	 * Adds a root to the roots on one device, unless it's (below) one of them. Roots it contains are removed.
+	 */
+	private static void addRoot(List<PendingDirectory> roots, PendingDirectory root) {
+		Path dir = Paths.get(root.path());
 
-				FileEntry entry = addFileEntry(file, volumeID, parentID, attrs);
+		for (Iterator<PendingDirectory> iter = roots.iterator(); iter.hasNext(); ) {
+			Path other = Paths.get(iter.next().path());
 
-				// FIXME: Don't rely on progress tracker for core logic
-				if (progressTracker.recordProgress(entry)) {
-					try {
-						database.commit();
-					} catch (SQLException ex) {
-						throw new IOException(ex);
-					}
-				}
+			if (dir.startsWith(other)) {
+				return;
+			} else if (other.startsWith(dir)) {
+				iter.remove();
+			}
+		}
 
-				return FileVisitResult.CONTINUE;
+		roots.add(root);
+	}
+
+	/**
+	 * Walks the roots of each device with a separate walker, each in its own thread, and waits for all of them.
+	 */
+	private void walkDevices(Map<Object, List<PendingDirectory>> rootsByDevice) throws IOException {
+		List<Callable<Void>> walks = new ArrayList<>(rootsByDevice.size());
+
+		for (Map.Entry<Object, List<PendingDirectory>> roots : rootsByDevice.entrySet()) {
+			Object                 device   = roots.getKey();
+			List<PendingDirectory> pending  = roots.getValue();
+			int                    volumeID = getOrAddVolume(Paths.get(pending.get(0).path()), device).id();
+
+			walks.add(() -> {
+				new DirectoryWalker(this, device, volumeID).walk(pending, parallelism);
+				return null;
+			});
+		}
+
+		if (walks.isEmpty()) {
+			return;
+		} else if (walks.size() == 1) {
+			try {
+				walks.get(0).call();
+				return;
+			} catch (IOException | RuntimeException ex) {
+				throw ex;
+			} catch (Exception ex) {
+				throw new IOException(ex);
 			}
+		}
 
-			@Override
-			public FileVisitResult visitFileFailed(Path file, IOException ex) throws IOException {
-				if (ex instanceof NoSuchFileException) {
-					return FileVisitResult.CONTINUE;
-				} else if (ex instanceof AccessDeniedException) {
-					int volumeID = volumeStack.get(volumeStack.size() - 1);
-					int parentID = parentStack.get(parentStack.size() - 1);
-
-					addFileEntry(file, volumeID, parentID, null);
-				} else if (ex instanceof FileSystemLoopException) {
-					System.out.println("Skipping FileSystem loop " + file);
-					return FileVisitResult.CONTINUE;
-				} else {
-					breakpoint();
-				}
+		ExecutorService executor = Executors.newFixedThreadPool(walks.size());
+		try {
+			for (Future<Void> future : executor.invokeAll(walks)) {
+				future.get();
+			}
+		} catch (InterruptedException ignored) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while walking");
+		} catch (ExecutionException ex) {
+			if (ex.getCause() instanceof IOException cause) {
+				throw cause;
+			}
+
+			throw new IOException(ex.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
 
-				return FileVisitResult.CONTINUE;
+	/**
+	 * Continues the scans that were interrupted (by a crash, reboot or killed process) from the last committed
+	 * frontier, and returns the number of directories it continued from. Does nothing when there is no frontier.
+	 * Always writes to the catalog, also when a {@link #setScanLog(Path) scan log} is set.
+	 * <p>
+	 * The frontier directories are listed again and their children matched against the catalog as with
+	 * {@link #setIncremental(boolean) incremental} scans, so children that were already written are not added twice.
+	 * Completed subdirectories that didn't change since are not listed again, unless
+	 * {@link #setVerifyAll(boolean) verifyAll} is set.
+	 */
+	public int resume() throws IOException {
+		List<PendingDirectory> frontier;
+		try {
+			synchronized (database) {
+				frontier = database.pendingDirectoryTable.getAll();
 			}
+		} catch (SQLException ex) {
+			throw new IOException(ex);
+		}
+
+		if (frontier.isEmpty()) {
+			return 0;
+		}
 
-			@Override
-			public FileVisitResult postVisitDirectory(Path dir, IOException ex) {
-				parentStack.remove(parentStack.size() - 1);
-				volumeStack.remove(volumeStack.size() - 1);
-//				System.out.println("<<< volumeStack=" + volumeStack + "\tparentStack=" + parentStack);
+		volumeCache.clear();
 
-				return FileVisitResult.CONTINUE;
+		Set<Integer> frontierIDs = new HashSet<>(frontier.size() * 2);
+		for (PendingDirectory pending : frontier) {
+			frontierIDs.add(pending.dirID());
+		}
+
+		// Only start at the topmost directories. The others are found again by listing their parents.
+		Map<Object, List<PendingDirectory>> rootsByDevice = new HashMap<>(4);
+		for (PendingDirectory pending : frontier) {
+			if (frontierIDs.contains(pending.parentID())) {
+				continue;
 			}
-		});
 
-		progressTracker.recordDone();
+			Path dir = Paths.get(pending.path());
+			try {
+				Object device = ScanAttributes.read(dir).getDeviceKey(dir);
+				rootsByDevice.computeIfAbsent(device, ignored -> new ArrayList<>(16)).add(pending);
+			} catch (IOException ex) {
+				// Gone or unreadable, so there's nothing to continue from
+				System.out.println("Can't resume from " + dir + ": " + ex);
+				try {
+					database.pendingDirectoryTable.deleteByDirID(pending.dirID());
+				} catch (SQLException ex2) {
+					throw new IOException(ex2);
+				}
+			}
+		}
+
+		resumeFrontier = frontierIDs;
+		statistics     = collectStatistics ? new ScanStatistics() : null;
+		DatabaseWriter writer = startWriter(new DatabaseSink(database), new ProgressTracker());
 		try {
+			walkDevices(rootsByDevice);
+			writer.finish();
+		} finally {
+			resumeFrontier = Collections.emptySet();
+			stopWriter(writer);
+		}
+
+		// What is left of the old frontier wasn't reachable anymore, e.g. below a directory that was removed
+		try {
+			for (int dirID : frontierIDs) {
+				database.pendingDirectoryTable.deleteByDirID(dirID);
+			}
+
 			database.commit();
 		} catch (SQLException ex) {
 			throw new IOException(ex);
 		}
 
-		return firstEntry;
+		rebuildAggregates();
+
+		printStatistics();
+
+		return frontier.size();
+	}
+
+	private void printStatistics() {
+		@Nullable ScanStatistics statistics = this.statistics;
+		if (statistics != null) {
+			statistics.stop();
+			System.out.print(statistics);
+		}
+	}
+
+	/**
+	 * Creates a progress tracker that expects to find what the catalog has below the roots, from the directory totals
+	 * of the last scan. For a root at the mount point of a volume without those, it expects what the filesystem
+	 * reports as in use instead. A target that isn't known for every root is left out.
+	 */
+	private ProgressTracker createProgressTracker(Map<Object, List<PendingDirectory>> rootsByDevice)
+			throws IOException {
+		long    numFilesTarget  = 0;
+		long    totalSizeTarget = 0;
+		boolean numFilesKnown   = true;
+		boolean totalSizeKnown  = true;
+
+		for (Map.Entry<Object, List<PendingDirectory>> roots : rootsByDevice.entrySet()) {
+			for (PendingDirectory root : roots.getValue()) {
+				if (root.remainingDepth() < Integer.MAX_VALUE) {
+					// Depth-limited, so neither is comparable
+					numFilesKnown  = false;
+					totalSizeKnown = false;
+					continue;
+				}
+
+				Path   dir    = Paths.get(root.path());
+				Volume volume = getOrAddVolume(dir, roots.getKey());
+
+				@Nullable DirectoryAggregate aggregate = null;
+				@Nullable FileEntry          rootEntry = null;
+				try {
+					synchronized (database) {
+						aggregate = database.directoryAggregateTable.getByID(root.dirID());
+						rootEntry = database.fileEntryTable.getByID(root.dirID());
+					}
+				} catch (SQLException ex) {
+					// Only an estimate, so carry on without it
+					ex.printStackTrace();
+				}
+
+				if (aggregate != null && rootEntry != null && aggregate.treeSize() > 1) {
+					// The totals include the root itself, which was written before the scan
+					numFilesTarget += aggregate.treeSize() - 1;
+					totalSizeTarget += aggregate.fileSizeOfTree() - rootEntry.size();
+				} else if (volume.mountPoint().equals(root.path())) {
+					FileStore store      = Files.getFileStore(dir);
+					long      usedInodes = StatUtils.getUsedInodeCount(dir);
+
+					numFilesTarget += usedInodes;
+					numFilesKnown &= usedInodes > 0;
+					totalSizeTarget += store.getTotalSpace() - store.getUnallocatedSpace();
+				} else {
+					numFilesKnown  = false;
+					totalSizeKnown = false;
+				}
+			}
+		}
+
+		ProgressTracker progressTracker = new ProgressTracker();
+		if (numFilesKnown) {
+			progressTracker.setNumFilesTarget(numFilesTarget);
+		}
+
+		if (totalSizeKnown) {
+			progressTracker.setTotalSizeTarget(totalSizeTarget);
+		}
+
+		return progressTracker;
 	}
 
-	private Volume getOrAddVolume(Path path) throws IOException {
+	private DatabaseWriter startWriter(ScanSink sink, ProgressTracker progressTracker) {
+		DatabaseWriter writer = new DatabaseWriter(sink, progressTracker, commitPolicy, queueCapacity, statistics);
+		this.writer = writer;
+		writer.start();
+
+		if (hashConcurrency > 0) {
+			hasher = new ContentHasher(writer, hashConcurrency, strongHashAlgorithm);
+		}
+
+		return writer;
+	}
+
+	/**
+	 * Waits for the hashing to finish, and then for the writer.
+	 */
+	private void stopWriter(DatabaseWriter writer) throws IOException {
+		@Nullable ContentHasher hasher = this.hasher;
+
+		try {
+			if (hasher != null) {
+				hasher.close();
+			}
+		} finally {
+			this.hasher = null;
+			this.writer = null;
+			writer.close();
+		}
+	}
+
+	/**
+	 * @return whether children are matched against the catalog.
+	 */
+	private boolean isMatchingCatalog() {
+		return incremental || !resumeFrontier.isEmpty();
+	}
+
+	void handleVisitFailure(Path file,
+	                        int volumeID,
+	                        int parentID,
+	                        IOException ex,
+	                        Map<String, FileEntry> cataloged) throws IOException {
+		if (ex instanceof NoSuchFileException) {
+			// Deleted while scanning
+		} else if (ex instanceof AccessDeniedException) {
+			addFileEntry(file, volumeID, parentID, null, cataloged);
+		} else if (ex instanceof FileSystemLoopException) {
+			System.out.println("Skipping FileSystem loop " + file);
+		} else {
+			breakpoint();
+		}
+	}
+
+	/**
+	 * Returns the volume of a path on the given device. Only the first time a device is seen during a scan, this looks
+	 * up the mount point and touches the database.
+	 */
+	Volume getOrAddVolume(Path path, Object deviceKey) throws IOException {
+		@Nullable Volume volume = volumeCache.get(deviceKey);
+		if (volume != null) {
+			return volume;
+		}
+
+		synchronized (volumeCache) {
+			volume = volumeCache.get(deviceKey);
+			if (volume == null) {
+				volume = addVolume(path);
+				volumeCache.put(deviceKey, volume);
+			}
+		}
+
+		return volume;
+	}
+
+	private Volume addVolume(Path path) throws IOException {
 		Volume volume = VolumeUtilities.getVolume(path);
 
 		try {
-			volume = database.volumeTable.updateValue(volume);
+			synchronized (database) {
+				volume = database.volumeTable.updateValue(volume);
+			}
 		} catch (SQLException ex) {
 			throw new IOException(ex);
 		}
@@ -190,14 +770,17 @@ public class DiskScanner {
 		for (int i = lineage.size() - 1; i >= 0; i--) {
 			Path dir = lineage.get(i);
 
-			int volumeID = getOrAddVolume(dir).id();
-			BasicFileAttributes attrs = Files.readAttributes(dir,
-			                                                 BasicFileAttributes.class,
-			                                                 LinkOption.NOFOLLOW_LINKS);
+			ScanAttributes attrs    = ScanAttributes.read(dir);
+			int            volumeID = getOrAddVolume(dir, attrs.getDeviceKey(dir)).id();
 
-			int parentID = parent == null ? 0 : parent.id();
+			int       parentID = parent == null ? 0 : parent.id();
+			FileEntry entry    = createFileEntry(dir, 0, volumeID, parentID, attrs);
 
-			parent = addFileEntry(dir, volumeID, parentID, attrs);
+			try {
+				parent = database.fileEntryTable.updateValue(entry);
+			} catch (SQLException ex) {
+				throw new IOException(ex);
+			}
 		}
 
 		return parent;
@@ -219,57 +802,269 @@ public class DiskScanner {
 		return lineage;
 	}
 
-	private FileEntry addFileEntry(Path file, int volumeID, int parentID, @Nullable BasicFileAttributes attrs)
+	/**
+	 * Returns the entries the catalog has for the children of a directory, keyed by name. Entries are removed when
+	 * {@link #addFileEntry} matches them, so what remains after listing the directory has disappeared from the disk.
+	 * <p>
+	 * Without {@link #setIncremental(boolean) incremental} scanning or {@link #resume() resuming}, this is always
+	 * empty.
+	 */
+	Map<String, FileEntry> getCatalogedChildren(int dirID) throws IOException {
+		if (!isMatchingCatalog()) {
+			return new HashMap<>(0);
+		}
+
+		List<FileEntry> children;
+		try {
+			synchronized (database) {
+				children = database.fileEntryTable.getByParentID(dirID, true);
+			}
+		} catch (SQLException ex) {
+			throw new IOException(ex);
+		}
+
+		Map<String, FileEntry> cataloged = new HashMap<>(children.size() * 2);
+		for (FileEntry child : children) {
+			cataloged.put(child.name(), child);
+		}
+
+		return cataloged;
+	}
+
+	/**
+	 * Queues an entry for writing, reusing the matching entry from {@code cataloged} if there is one. New entries get
+	 * their ID assigned here. Safe to call from multiple walker threads, as long as each uses its own
+	 * {@code cataloged}.
+	 */
+	FileEntry addFileEntry(Path file,
+	                       int volumeID,
+	                       int parentID,
+	                       @Nullable ScanAttributes attrs,
+	                       Map<String, FileEntry> cataloged)
 			throws IOException {
-		FileType fileType = getFileType(attrs);
+		return addFileEntry(file, volumeID, parentID, attrs, cataloged, 0);
+	}
 
-		Path   fileName = file.getFileName();
-		String name     = fileName == null ? "/" : fileName.toString();
+	/**
+	 * Like {@link #addFileEntry(Path, int, int, ScanAttributes, Map)}, for a directory that is going to be listed.
+	 * The directory is added to the frontier in the same transaction as its entry, until {@link #removePending(int)}.
+	 *
+	 * @param remainingDepth The number of levels to scan below the directory, counting its children as the first
+	 */
+	FileEntry addDirectoryEntry(Path dir,
+	                            int volumeID,
+	                            int parentID,
+	                            ScanAttributes attrs,
+	                            Map<String, FileEntry> cataloged,
+	                            int remainingDepth)
+			throws IOException {
+		requireNonNull(attrs, "attrs");
+		requireAtLeast(1, remainingDepth, "remainingDepth");
 
-		long size                  = attrs == null ? 0 : attrs.size();
-		long creationTimestamp     = attrs == null ? 0 : attrs.creationTime().toMillis();
-		long modificationTimestamp = attrs == null ? 0 : attrs.lastModifiedTime().toMillis();
-		long accessTimestamp       = attrs == null ? 0 : attrs.lastAccessTime().toMillis();
-		long firstSeenTimestamp    = System.currentTimeMillis();
+		return addFileEntry(dir, volumeID, parentID, attrs, cataloged, remainingDepth);
+	}
 
-		FileEntry entry = new FileEntry(database, 0,
-		                                parentID,
-		                                name,
-		                                volumeID,
-		                                fileType.id(),
-		                                size,
-		                                creationTimestamp,
-		                                modificationTimestamp,
-		                                accessTimestamp,
-		                                firstSeenTimestamp,
-		                                firstSeenTimestamp);
+	private FileEntry addFileEntry(Path file,
+	                               int volumeID,
+	                               int parentID,
+	                               @Nullable ScanAttributes attrs,
+	                               Map<String, FileEntry> cataloged,
+	                               int remainingDepth)
+			throws IOException {
+		@Nullable DatabaseWriter writer = this.writer;
+		assert writer != null : "Not scanning";
 
-		try {
-			entry = database.fileEntryTable.updateValue(entry);
-		} catch (SQLException ex) {
-			throw new IOException(ex);
+		@Nullable FileEntry existing = cataloged.remove(getName(file));
+
+		if (existing == null) {
+			FileEntry entry = createFileEntry(file,
+			                                  database.fileEntryTable.allocateID(),
+			                                  volumeID,
+			                                  parentID,
+			                                  attrs);
+			writer.write(entry, file, createPending(file, entry, remainingDepth));
+			hashIfNeeded(file, entry);
+			return entry;
 		}
 
+		if (attrs == null && !existing.isDeleted()) {
+			// Can't read it now, so keep what is known
+			writer.skip(existing, file);
+			return existing;
+		}
+
+		FileEntry entry = createFileEntry(file, existing.id(), volumeID, parentID, attrs);
+		if (isUnchanged(entry, existing)) {
+			writer.skip(existing, file, createPending(file, existing, remainingDepth));
+			hashIfNeeded(file, existing);
+			return existing;
+		}
+
+		entry = entry.replacing(existing);
+		writer.write(entry, file, createPending(file, entry, remainingDepth));
+		hashIfNeeded(file, entry);
+
 //		System.out.println(entry);
 		return entry;
 	}
 
-	private static FileType getFileType(@Nullable BasicFileAttributes attrs) {
-		FileType fileType;
-		if (attrs == null) {
-			fileType = FileType.UNKNOWN;
-		} else if (attrs.isDirectory()) {
-			fileType = FileType.DIRECTORY;
-		} else if (attrs.isRegularFile()) {
-			fileType = FileType.REGULAR_FILE;
-		} else if (attrs.isSymbolicLink()) {
-			fileType = FileType.SYMLINK;
-		} else if (attrs.isOther()) {
-			fileType = FileType.OTHER;
-		} else {
-			breakpoint();
-			fileType = FileType.OTHER;
+	/**
+	 * @param existing The catalogued entry of a directory before calling {@link #addFileEntry}
+	 * @param entry    The entry that {@link #addFileEntry} returned for it
+	 * @return whether the directory doesn't need to be listed, because it's catalogued with the same modification
+	 * time (among others) and {@link #setVerifyAll(boolean) verifyAll} isn't set.
+	 */
+	boolean canSkipListing(@Nullable FileEntry existing, FileEntry entry) {
+		return isMatchingCatalog() && !verifyAll && entry.equals(existing) && !resumeFrontier.contains(entry.id());
+	}
+
+	/**
+	 * Takes the place of listing an unchanged directory: all catalogued files (including symlinks etc.) are recorded
+	 * as seen without touching the disk.
+	 *
+	 * @return the catalogued subdirectories, which still need to be visited.
+	 */
+	List<FileEntry> reuseCatalogedFiles(Path dir, Map<String, FileEntry> cataloged) throws IOException {
+		@Nullable DatabaseWriter writer = this.writer;
+		assert writer != null : "Not scanning";
+
+		List<FileEntry> subdirectories = new ArrayList<>(cataloged.size());
+
+		for (Iterator<FileEntry> iter = cataloged.values().iterator(); iter.hasNext(); ) {
+			FileEntry child = iter.next();
+			if (child.isDeleted()) {
+				continue;
+			}
+
+			if (child.fileTypeID() == FileType.DIRECTORY.id()) {
+				subdirectories.add(child);
+			} else {
+				iter.remove();
+				Path file = dir.resolve(child.name());
+				writer.skip(child, file);
+				hashIfNeeded(file, child);
+			}
+		}
+
+		return subdirectories;
+	}
+
+	/**
+	 * Queues a regular file for hashing when hashing is enabled and the entry doesn't have a hash yet. Entries that
+	 * changed are written without their old hash, so they are hashed again.
+	 */
+	private void hashIfNeeded(Path file, FileEntry entry) throws IOException {
+		@Nullable ContentHasher hasher = this.hasher;
+		if (hasher == null || entry.isHashed() || entry.fileTypeID() != FileType.REGULAR_FILE.id()) {
+			return;
+		}
+
+		hasher.hash(file, entry.id());
+	}
+
+	/**
+	 * Called when all children of a directory have been passed to {@link #addFileEntry}. Marks the ones that weren't
+	 * found as deleted and updates the last-seen time of the others.
+	 */
+	void finishDirectory(int dirID, Map<String, FileEntry> cataloged) throws IOException {
+		if (!isMatchingCatalog()) {
+			return;
+		}
+
+		@Nullable DatabaseWriter writer = this.writer;
+		assert writer != null : "Not scanning";
+
+		long now = System.currentTimeMillis();
+
+		for (FileEntry gone : cataloged.values()) {
+			if (!gone.isDeleted()) {
+				writer.markDeleted(gone.id(), now);
+			}
+		}
+
+		writer.touchChildren(dirID, now);
+	}
+
+	/**
+	 * Called instead of {@link #addDirectoryEntry} for a directory on another device than its parent. Its catalogued
+	 * entry is kept as-is, as another walker may be scanning it.
+	 */
+	void skipOtherDevice(Path dir, Object device, Map<String, FileEntry> cataloged) throws IOException {
+		cataloged.remove(getName(dir));
+
+		int volumeID = getOrAddVolume(dir, device).id();
+		System.out.println("Skipping root " + dir + " (volumeID = " + volumeID + ')');
+	}
+
+	/**
+	 * Called when everything of a directory's children is queued, to remove it from the frontier after that.
+	 */
+	void removePending(int dirID) throws IOException {
+		@Nullable DatabaseWriter writer = this.writer;
+		assert writer != null : "Not scanning";
+
+		writer.removePending(dirID);
+	}
+
+	private static @Nullable PendingDirectory createPending(Path dir, FileEntry entry, int remainingDepth) {
+		if (remainingDepth == 0) {
+			return null;
 		}
-		return fileType;
+
+		return new PendingDirectory(entry.id(), entry.parentID(), dir.toString(), remainingDepth);
+	}
+
+	private static boolean isUnchanged(FileEntry entry, FileEntry existing) {
+		return !existing.isDeleted() &&
+		       entry.volumeID() == existing.volumeID() &&
+		       entry.fileTypeID() == existing.fileTypeID() &&
+		       entry.size() == existing.size() &&
+		       entry.creationTimestamp() == existing.creationTimestamp() &&
+		       entry.modificationTimestamp() == existing.modificationTimestamp() &&
+		       entry.inode() == existing.inode() &&
+		       entry.device() == existing.device() &&
+		       entry.linkCount() == existing.linkCount();
+	}
+
+	static String getName(Path file) {
+		Path fileName = file.getFileName();
+		return fileName == null ? "/" : fileName.toString();
+	}
+
+	private FileEntry createFileEntry(Path file,
+	                                  int id,
+	                                  int volumeID,
+	                                  int parentID,
+	                                  @Nullable ScanAttributes attrs) {
+		FileType fileType = attrs == null ? FileType.UNKNOWN : attrs.fileType();
+		String   name     = getName(file);
+
+		long size                  = attrs == null ? 0 : attrs.size();
+		long creationTimestamp     = attrs == null ? 0 : attrs.creationTimestamp();
+		long modificationTimestamp = attrs == null ? 0 : attrs.modificationTimestamp();
+		long accessTimestamp       = attrs == null ? 0 : attrs.accessTimestamp();
+		long firstSeenTimestamp    = System.currentTimeMillis();
+		long inode                 = attrs == null ? 0 : attrs.inode();
+		long device                = attrs == null ? 0 : attrs.device();
+		int  linkCount             = attrs == null ? 0 : attrs.linkCount();
+
+		return new FileEntry(database, id,
+		                     parentID,
+		                     name,
+		                     volumeID,
+		                     fileType.id(),
+		                     size,
+		                     creationTimestamp,
+		                     modificationTimestamp,
+		                     accessTimestamp,
+		                     firstSeenTimestamp,
+		                     firstSeenTimestamp,
+		                     0,
+		                     inode,
+		                     device,
+		                     linkCount,
+		                     0,
+		                     null,
+		                     0);
 	}
 }
@@ -0,0 +1,74 @@
+package org.digitalmodular.maruneko.diskscanner;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts values in buckets that are 1/8th of a power of two wide, so percentiles are accurate to within 12.5% over
+ * the whole range of {@code long}, in a fixed 4 kB. Values can be recorded from any number of threads.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+final class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS     = 1 << SUB_BUCKET_BITS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(Long.SIZE * SUB_BUCKETS);
+	private final AtomicLong      count  = new AtomicLong();
+	private final AtomicLong      max    = new AtomicLong();
+
+	void record(long value) {
+		value = Math.max(0, value);
+
+		counts.incrementAndGet(indexOf(value));
+		count.incrementAndGet();
+		max.accumulateAndGet(value, Math::max);
+	}
+
+	long getCount() {
+		return count.get();
+	}
+
+	long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * @param fraction The percentile as a fraction, e.g. 0.99 for the 99th
+	 * @return the lower bound of the bucket the percentile falls in, or 0 when nothing was recorded.
+	 */
+	long getPercentile(double fraction) {
+		long target = (long)Math.ceil(fraction * count.get());
+		long seen   = 0;
+
+		for (int i = 0; i < counts.length(); i++) {
+			seen += counts.get(i);
+			if (seen >= target && seen > 0) {
+				return valueOf(i);
+			}
+		}
+
+		return 0;
+	}
+
+	private static int indexOf(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int)value;
+		}
+
+		int exponent  = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int)(value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	private static long valueOf(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+
+		int exponent  = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		int subBucket = index % SUB_BUCKETS;
+		return (long)(SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+	}
+}
@@ -0,0 +1,56 @@
+package org.digitalmodular.maruneko.diskscanner;
+
+import java.util.List;
+
+import org.jetbrains.annotations.Nullable;
+
+import org.digitalmodular.maruneko.database.FileEntry;
+import org.digitalmodular.maruneko.database.PendingDirectory;
+
+/**
+ * Discards everything, for {@link DiskScanner#setBenchmark(boolean) benchmark} scans that measure the walk alone.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+final class NullSink implements ScanSink {
+	@Override
+	public void addEntries(List<FileEntry> entries) {
+	}
+
+	@Override
+	public void addPending(List<PendingDirectory> pending) {
+	}
+
+	@Override
+	public void removePending(int dirID) {
+	}
+
+	@Override
+	public void touchChildren(int parentID, long timestamp) {
+	}
+
+	@Override
+	public void markDeleted(int id, long timestamp) {
+	}
+
+	@Override
+	public void setHash(int id, long contentHash, @Nullable String strongHash, long hashedTimestamp) {
+	}
+
+	@Override
+	public void finish() {
+	}
+
+	@Override
+	public void commit() {
+	}
+
+	@Override
+	public void rollback() {
+	}
+
+	@Override
+	public void close() {
+	}
+}
@@ -1,5 +1,6 @@
 package org.digitalmodular.maruneko.diskscanner;
 
+import java.nio.file.Path;
 import java.text.NumberFormat;
 
 import org.jetbrains.annotations.Nullable;
@@ -19,49 +20,94 @@ public class ProgressTracker {
 	public static final NumberFormat FILESIZE_FORMATTER = FormatterUtilities.getFixedPrecisionFormatter(4);
 
 	/**
-	 * A value of 0 means no known target, and renders the progress as indeterminate.
+	 * The expected number of files and their total size. A value of 0 means no known target. Without either, the
+	 * progress is indeterminate.
 	 */
 	@SuppressWarnings("FieldHasSetterButNoGetter")
-	private int totalSizeTarget = 0;
+	private long numFilesTarget  = 0;
+	@SuppressWarnings("FieldHasSetterButNoGetter")
+	private long totalSizeTarget = 0;
+
+	private           int    numFiles  = 0;
+	private           long   totalSize = 0;
+	private @Nullable String lastPath  = null;
+
+	private int  numHashed  = 0;
+	private long hashedSize = 0;
+
+	private final long startTimestamp     = System.currentTimeMillis();
+	private       long lastDumpTimestamp  = startTimestamp;
+	private       int  lastDumpNumFiles   = 0;
+	private       long lastDumpHashedSize = 0;
+
+	public void setNumFilesTarget(long numFilesTarget) {
+		this.numFilesTarget = requireAtLeast(0, numFilesTarget, "numFilesTarget");
+	}
 
-	private           int       numFiles  = 0;
-	private           long      totalSize = 0;
-	private @Nullable FileEntry lastEntry = null;
+	public void setTotalSizeTarget(long totalSizeTarget) {
+		this.totalSizeTarget = requireAtLeast(0, totalSizeTarget, "totalSizeTarget");
+	}
 
-	private final long startTimestamp    = System.currentTimeMillis();
-	private       long lastDumpTimestamp = startTimestamp;
-	private       int  lastDumpNumFiles  = 0;
+	/**
+	 * Records an entry, of which only the name is shown.
+	 */
+	public void recordProgress(FileEntry entry) {
+		requireNonNull(entry, "entry");
 
-	public void setTotalSizeTarget(int totalSizeTarget) {
-		this.totalSizeTarget = requireAtLeast(1, totalSizeTarget, "totalSizeTarget");
+		recordProgress(entry.size(), entry.name());
 	}
 
-	public boolean recordProgress(FileEntry entry) {
+	/**
+	 * Records an entry, showing the path it was found at. The progress output never reads the catalog, as it runs on
+	 * the thread that is writing it.
+	 */
+	public void recordProgress(FileEntry entry, Path file) {
 		requireNonNull(entry, "entry");
+		requireNonNull(file, "file");
+
+		recordProgress(entry.size(), file.toString());
+	}
+
+	private void recordProgress(long size, String path) {
 		numFiles++;
-		totalSize += entry.size();
-		lastEntry = entry;
+		totalSize += size;
+		lastPath = path;
 
-		long now     = System.currentTimeMillis();
-		int  elapsed = getElapsed(now);
+		dumpProgressIfDue();
+	}
 
-		if (elapsed >= 1000) {
-			dumpProgress(elapsed, numFiles - lastDumpNumFiles);
-			lastDumpTimestamp = now;
-			lastDumpNumFiles  = numFiles;
-			return true;
-		}
+	/**
+	 * Records the contents of a file being hashed. Hashing is reported separately, as it reads the files themselves
+	 * instead of just their metadata.
+	 */
+	public void recordHashed(long size) {
+		requireAtLeast(0, size, "size");
+		numHashed++;
+		hashedSize += size;
 
-		return false;
+		dumpProgressIfDue();
 	}
 
 	public void recordDone() {
 		long now     = System.currentTimeMillis();
 		int  elapsed = getElapsed(now);
 
-		dumpProgress(elapsed, numFiles - lastDumpNumFiles);
-		lastDumpTimestamp = now;
-		lastDumpNumFiles  = numFiles;
+		dumpProgress(elapsed, numFiles - lastDumpNumFiles, hashedSize - lastDumpHashedSize);
+		lastDumpTimestamp  = now;
+		lastDumpNumFiles   = numFiles;
+		lastDumpHashedSize = hashedSize;
+	}
+
+	private void dumpProgressIfDue() {
+		long now     = System.currentTimeMillis();
+		int  elapsed = getElapsed(now);
+
+		if (elapsed >= 1000) {
+			dumpProgress(elapsed, numFiles - lastDumpNumFiles, hashedSize - lastDumpHashedSize);
+			lastDumpTimestamp  = now;
+			lastDumpNumFiles   = numFiles;
+			lastDumpHashedSize = hashedSize;
+		}
 	}
 
 	private int getElapsed(long now) {
@@ -75,11 +121,10 @@ public class ProgressTracker {
 	}
 
 	@SuppressWarnings("UseOfSystemOutOrSystemErr")
-	private void dumpProgress(int elapsedMillis, int numFilesDelta) {
+	private void dumpProgress(int elapsedMillis, int numFilesDelta, long hashedSizeDelta) {
 		System.out.print(numFiles);
-		if (totalSizeTarget > 0) {
-			float progress = numFiles * 100.0f / totalSizeTarget;
-			System.out.printf("/%d files (%.1f%%)", totalSizeTarget, progress);
+		if (numFilesTarget > 0) {
+			System.out.printf("/%d files", numFilesTarget);
 		} else {
 			System.out.print(" files");
 		}
@@ -88,11 +133,50 @@ public class ProgressTracker {
 		System.out.printf("\t%.1f files/sec", speed);
 
 		System.out.print('\t' + FileSizeFormatter.formatFilesize(totalSize, FILESIZE_FORMATTER, true));
+		if (totalSizeTarget > 0) {
+			System.out.print('/' + FileSizeFormatter.formatFilesize(totalSizeTarget, FILESIZE_FORMATTER, true));
+		}
+
+		double progress = getProgress();
+		if (progress > 0) {
+			System.out.printf("\t%.1f%%", progress * 100);
+
+			if (progress < 1) {
+				// The average rate so far, which steadies as the scan goes on
+				long elapsed   = System.currentTimeMillis() - startTimestamp;
+				long remaining = (long)(elapsed * (1 - progress) / progress);
+				System.out.print("\tETA " + formatDuration(remaining));
+			}
+		}
 
-		if (lastEntry != null) {
-			System.out.print('\t' + lastEntry.getFullPath());
+		if (numHashed > 0) {
+			long hashSpeed = elapsedMillis == 0 ? 0 : hashedSizeDelta * 1000 / elapsedMillis;
+			System.out.print("\t" + numHashed + " hashed\t" +
+			                 FileSizeFormatter.formatFilesize(hashSpeed, FILESIZE_FORMATTER, true) + "/sec");
+		}
+
+		if (lastPath != null) {
+			System.out.print('\t' + lastPath);
 		}
 
 		System.out.println();
 	}
+
+	/**
+	 * @return the fraction done, by number of files when that's known, otherwise by size, or 0 when neither is known.
+	 */
+	private double getProgress() {
+		if (numFilesTarget > 0) {
+			return (double)numFiles / numFilesTarget;
+		} else if (totalSizeTarget > 0) {
+			return (double)totalSize / totalSizeTarget;
+		} else {
+			return 0;
+		}
+	}
+
+	private static String formatDuration(long millis) {
+		long seconds = millis / 1000;
+		return String.format("%d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+	}
 }
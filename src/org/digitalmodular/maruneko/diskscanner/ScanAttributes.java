@@ -0,0 +1,122 @@
+package org.digitalmodular.maruneko.diskscanner;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+
+import static org.digitalmodular.utilities.ValidatorUtilities.requireAtLeast;
+import static org.digitalmodular.utilities.ValidatorUtilities.requireNonNull;
+
+import org.digitalmodular.maruneko.database.FileType;
+
+/**
+ * The attributes of a file as the scanner needs them, read with a single stat call.
+ * <p>
+ * On filesystems with the {@code unix} attribute view this includes the inode number, device ID and hard link count.
+ * Elsewhere these are 0.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+record ScanAttributes(FileType fileType,
+                      long size,
+                      long creationTimestamp,
+                      long modificationTimestamp,
+                      long accessTimestamp,
+                      long inode,
+                      long device,
+                      int linkCount) {
+	/**
+	 * The basic attributes plus those of the unix view that come from the same {@code stat}. Asking for {@code unix:*}
+	 * instead would also resolve the owner and group names, which is a lot slower.
+	 */
+	private static final String UNIX_ATTRIBUTES = "unix:size,creationTime,lastModifiedTime,lastAccessTime," +
+	                                              "isDirectory,isRegularFile,isSymbolicLink,isOther," +
+	                                              "ino,dev,nlink";
+
+	ScanAttributes {
+		requireNonNull(fileType, "fileType");
+		requireAtLeast(0, size, "size");
+		requireAtLeast(0, linkCount, "linkCount");
+	}
+
+	static ScanAttributes read(Path file) throws IOException {
+		if (!hasUnixView(file)) {
+			return of(Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS));
+		}
+
+		Map<String, Object> attrs = Files.readAttributes(file, UNIX_ATTRIBUTES, LinkOption.NOFOLLOW_LINKS);
+
+		return new ScanAttributes(getFileType((Boolean)attrs.get("isDirectory"),
+		                                      (Boolean)attrs.get("isRegularFile"),
+		                                      (Boolean)attrs.get("isSymbolicLink"),
+		                                      (Boolean)attrs.get("isOther")),
+		                          (Long)attrs.get("size"),
+		                          ((FileTime)attrs.get("creationTime")).toMillis(),
+		                          ((FileTime)attrs.get("lastModifiedTime")).toMillis(),
+		                          ((FileTime)attrs.get("lastAccessTime")).toMillis(),
+		                          (Long)attrs.get("ino"),
+		                          (Long)attrs.get("dev"),
+		                          (Integer)attrs.get("nlink"));
+	}
+
+	static ScanAttributes of(BasicFileAttributes attrs) {
+		return new ScanAttributes(getFileType(attrs.isDirectory(),
+		                                      attrs.isRegularFile(),
+		                                      attrs.isSymbolicLink(),
+		                                      attrs.isOther()),
+		                          attrs.size(),
+		                          attrs.creationTime().toMillis(),
+		                          attrs.lastModifiedTime().toMillis(),
+		                          attrs.lastAccessTime().toMillis(),
+		                          0,
+		                          0,
+		                          0);
+	}
+
+	static boolean hasUnixView(Path file) {
+		return file.getFileSystem().supportedFileAttributeViews().contains("unix");
+	}
+
+	private static FileType getFileType(boolean isDirectory,
+	                                    boolean isRegularFile,
+	                                    boolean isSymbolicLink,
+	                                    boolean isOther) {
+		if (isDirectory) {
+			return FileType.DIRECTORY;
+		} else if (isRegularFile) {
+			return FileType.REGULAR_FILE;
+		} else if (isSymbolicLink) {
+			return FileType.SYMLINK;
+		} else if (isOther) {
+			return FileType.OTHER;
+		} else {
+			DiskScanner.breakpoint();
+			return FileType.OTHER;
+		}
+	}
+
+	boolean isDirectory() {
+		return fileType == FileType.DIRECTORY;
+	}
+
+	/**
+	 * @return whether {@link #inode()}, {@link #device()} and {@link #linkCount()} are known. Every file has at least
+	 * one link, so a count of 0 means it wasn't read.
+	 */
+	boolean hasUnixAttributes() {
+		return linkCount > 0;
+	}
+
+	/**
+	 * @return the same key {@link VolumeUtilities#getDeviceKey(Path)} would return for this file, without another
+	 * stat call when possible.
+	 */
+	Object getDeviceKey(Path file) throws IOException {
+		return hasUnixAttributes() ? (Object)device : VolumeUtilities.getDeviceKey(file);
+	}
+}
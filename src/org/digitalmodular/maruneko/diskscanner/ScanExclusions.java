@@ -0,0 +1,248 @@
+package org.digitalmodular.maruneko.diskscanner;
+
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.jetbrains.annotations.Nullable;
+
+import static org.digitalmodular.utilities.CollectionValidatorUtilities.requireValuesNonNull;
+import static org.digitalmodular.utilities.ValidatorUtilities.requireNonNull;
+
+/**
+ * A set of paths a scan should leave out, compiled once into a trie of path components.
+ * <p>
+ * Rules are written as follows. Blank lines and lines starting with {@code #} are ignored.
+ * <ul>
+ * <li>{@code /proc} (starts with a slash): that absolute path and everything below it</li>
+ * <li>{@code node_modules}, {@code *.tmp} (no slash): every file or directory with a matching name</li>
+ * <li>{@code .cache/thumbnails} (slash, but not at the start): those components anywhere in the tree</li>
+ * </ul>
+ * Components can be globs with {@code *} (any characters except {@code /}), {@code ?} (one character) and a
+ * separate {@code **} component (any number of components).
+ * <p>
+ * Exact names are hash lookups. Globs of the form {@code prefix*} and {@code *suffix} are looked up by trying each
+ * prefix or suffix of a name. Checking a path therefore takes time proportional to its length, regardless of the
+ * number of rules. Only other globs (like {@code a*b?c}) are tried one by one.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+public final class ScanExclusions {
+	public static final ScanExclusions NONE = compile(List.of());
+
+	/**
+	 * Kernel and device trees, which are not worth cataloguing (and are normally on other devices anyway).
+	 */
+	public static final ScanExclusions PSEUDO_FILESYSTEMS = compile(List.of("/proc", "/sys", "/dev"));
+
+	private final Node         root;
+	private final List<String> rules;
+
+	private ScanExclusions(Node root, List<String> rules) {
+		this.root  = root;
+		this.rules = rules;
+	}
+
+	public static ScanExclusions compile(Collection<String> rules) {
+		requireValuesNonNull(rules, "rules");
+
+		Node         root     = new Node();
+		List<String> compiled = new ArrayList<>(rules.size());
+
+		for (String rule : rules) {
+			rule = rule.strip();
+			if (rule.isEmpty() || rule.startsWith("#")) {
+				continue;
+			}
+
+			Node node = root;
+			if (!rule.startsWith("/")) {
+				node = node.getOrAddAnyDepth();
+			}
+
+			for (String component : rule.split("/")) {
+				if (!component.isEmpty()) {
+					node = node.getOrAddChild(component);
+				}
+			}
+
+			node.excluded = true;
+			compiled.add(rule);
+		}
+
+		return new ScanExclusions(root, List.copyOf(compiled));
+	}
+
+	public List<String> getRules() {
+		return rules;
+	}
+
+	public boolean isEmpty() {
+		return rules.isEmpty();
+	}
+
+	/**
+	 * @param path An absolute path
+	 * @return whether the path or one of its ancestors matches a rule.
+	 */
+	public boolean isExcluded(Path path) {
+		requireNonNull(path, "path");
+
+		if (rules.isEmpty()) {
+			return false;
+		}
+
+		Set<Node> states = new LinkedHashSet<>(8);
+		root.addTo(states);
+
+		for (int i = 0; i < path.getNameCount(); i++) {
+			String    name = path.getName(i).toString();
+			Set<Node> next = new LinkedHashSet<>(8);
+
+			for (Node state : states) {
+				state.step(name, next);
+			}
+
+			for (Node state : next) {
+				if (state.excluded) {
+					return true;
+				}
+			}
+
+			if (next.isEmpty()) {
+				return false;
+			}
+
+			states = next;
+		}
+
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + rules;
+	}
+
+	private static final class Node {
+		private final Map<String, Node>              exact    = new HashMap<>(4);
+		private final Map<String, Node>              prefixes = new HashMap<>(4);
+		private final Map<String, Node>              suffixes = new HashMap<>(4);
+		private final List<Map.Entry<Pattern, Node>> globs    = new ArrayList<>(0);
+
+		/**
+		 * The state after a {@code **} component, which stays active while consuming components.
+		 */
+		private @Nullable Node    anyDepth = null;
+		private           boolean selfLoop = false;
+		private           boolean excluded = false;
+
+		Node getOrAddAnyDepth() {
+			if (anyDepth == null) {
+				anyDepth          = new Node();
+				anyDepth.selfLoop = true;
+			}
+
+			return anyDepth;
+		}
+
+		Node getOrAddChild(String component) {
+			if (component.equals("**")) {
+				return getOrAddAnyDepth();
+			}
+
+			if (!containsWildcard(component)) {
+				return exact.computeIfAbsent(component, ignored -> new Node());
+			}
+
+			// A single star at either end
+			int star = component.indexOf('*');
+			if (star >= 0 && component.indexOf('*', star + 1) < 0 && component.indexOf('?') < 0) {
+				if (star == component.length() - 1) {
+					return prefixes.computeIfAbsent(component.substring(0, star), ignored -> new Node());
+				} else if (star == 0) {
+					return suffixes.computeIfAbsent(component.substring(1), ignored -> new Node());
+				}
+			}
+
+			Pattern pattern = compileGlob(component);
+			for (Map.Entry<Pattern, Node> glob : globs) {
+				if (glob.getKey().pattern().equals(pattern.pattern())) {
+					return glob.getValue();
+				}
+			}
+
+			Node node = new Node();
+			globs.add(new AbstractMap.SimpleImmutableEntry<>(pattern, node));
+			return node;
+		}
+
+		/**
+		 * Adds this state, and the states reachable from it without consuming a component.
+		 */
+		void addTo(Set<Node> states) {
+			if (states.add(this) && anyDepth != null) {
+				anyDepth.addTo(states);
+			}
+		}
+
+		void step(String name, Set<Node> next) {
+			if (selfLoop) {
+				addTo(next);
+			}
+
+			addIfPresent(exact.get(name), next);
+
+			if (!prefixes.isEmpty()) {
+				for (int i = 0; i <= name.length(); i++) {
+					addIfPresent(prefixes.get(name.substring(0, i)), next);
+				}
+			}
+
+			if (!suffixes.isEmpty()) {
+				for (int i = 0; i <= name.length(); i++) {
+					addIfPresent(suffixes.get(name.substring(i)), next);
+				}
+			}
+
+			for (Map.Entry<Pattern, Node> glob : globs) {
+				if (glob.getKey().matcher(name).matches()) {
+					glob.getValue().addTo(next);
+				}
+			}
+		}
+
+		private static void addIfPresent(@Nullable Node node, Set<Node> next) {
+			if (node != null) {
+				node.addTo(next);
+			}
+		}
+	}
+
+	private static boolean containsWildcard(String component) {
+		return component.indexOf('*') >= 0 || component.indexOf('?') >= 0;
+	}
+
+	private static Pattern compileGlob(String component) {
+		StringBuilder regex = new StringBuilder(component.length() * 2);
+
+		for (String literal : Arrays.asList(component.split("(?=[*?])|(?<=[*?])"))) {
+			switch (literal) {
+				case "*" -> regex.append(".*");
+				case "?" -> regex.append('.');
+				default -> regex.append(Pattern.quote(literal));
+			}
+		}
+
+		return Pattern.compile(regex.toString(), Pattern.DOTALL);
+	}
+}
@@ -0,0 +1,350 @@
+package org.digitalmodular.maruneko.diskscanner;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.jetbrains.annotations.Nullable;
+
+import static org.digitalmodular.utilities.ValidatorUtilities.requireAtLeast;
+import static org.digitalmodular.utilities.ValidatorUtilities.requireNonNull;
+
+import org.digitalmodular.maruneko.database.Database;
+import org.digitalmodular.maruneko.database.FileEntry;
+
+/**
+ * The format of the append-only scan log a {@link DiskScanner#setScanLog(Path) scan} can write instead of the
+ * catalog, and the loader that imports it into the catalog afterwards.
+ * <p>
+ * The log starts with {@link #MAGIC}, followed by records of the form {@code [length][payload][crc32]}. The length is
+ * an unsigned varint and the CRC is 4 bytes big-endian. Each payload starts with a type byte, followed by varints
+ * (zigzag-encoded where the value can be negative) and, for entries, the UTF-8 name. Entries are logged without
+ * hashes; those follow in separate records once a file is hashed.
+ * <p>
+ * A scan that completes ends the log with a {@link #TYPE_END} record holding the number of records before it. A log
+ * without one was cut short, by a crash or a failed scan, and is loaded up to the last complete record.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+public final class ScanLog {
+	static final byte[] MAGIC = "MARULOG1".getBytes(StandardCharsets.US_ASCII);
+
+	static final byte TYPE_ENTRY          = 1;
+	static final byte TYPE_TOUCH_CHILDREN = 2;
+	static final byte TYPE_MARK_DELETED   = 3;
+	static final byte TYPE_HASH           = 4;
+	static final byte TYPE_END            = 5;
+
+	/**
+	 * Larger than any record with a name of up to {@link #MAX_NAME_LENGTH} bytes.
+	 */
+	static final int MAX_RECORD_SIZE = 65536;
+	static final int MAX_NAME_LENGTH = 32768;
+
+	/**
+	 * What {@link #load(Path, Database)} imported.
+	 *
+	 * @param numRecords The number of records loaded
+	 * @param problem    Why the rest of the log was skipped, or {@code null} when the whole log was loaded
+	 * @author Mark Jeronimus
+	 */
+	// Created 2026-10-17
+	public record LoadResult(long numRecords, @Nullable String problem) {
+		public LoadResult {
+			requireAtLeast(0, numRecords, "numRecords");
+		}
+
+		/**
+		 * @return whether the whole log was loaded. When not, the catalog only holds a part of the scan.
+		 */
+		public boolean isComplete() {
+			return problem == null;
+		}
+	}
+
+	private ScanLog() {
+		throw new AssertionError();
+	}
+
+	/**
+	 * Imports a scan log into the catalog it was scanned for, in a single transaction. The entries reference volumes
+	 * and parent entries that the scan wrote into that catalog directly.
+	 * <p>
+	 * The secondary indexes of the catalog are dropped during the import and rebuilt at the end, and the directory
+	 * totals are computed again.
+	 * <p>
+	 * A log that is corrupt or cut short is imported up to the last good record, and the result says so. The caller
+	 * decides whether to keep the partial import or to scan again.
+	 */
+	public static LoadResult load(Path log, Database database) throws IOException {
+		requireNonNull(log, "log");
+		requireNonNull(database, "database");
+
+		try (InputStream in = new BufferedInputStream(Files.newInputStream(log), 1 << 20)) {
+			DataInputStream data = new DataInputStream(in);
+
+			byte[] magic = new byte[MAGIC.length];
+			data.readFully(magic);
+			if (!Arrays.equals(magic, MAGIC)) {
+				throw new IOException("Not a scan log: " + log);
+			}
+
+			synchronized (database) {
+				database.fileEntryTable.dropIndexes();
+				LoadResult result = loadRecords(data, database);
+				database.fileEntryTable.createIndexes();
+				database.directoryAggregateTable.rebuild();
+
+				database.commit();
+				return result;
+			}
+		} catch (SQLException ex) {
+			throw new IOException(ex);
+		}
+	}
+
+	private static LoadResult loadRecords(DataInputStream data, Database database)
+			throws IOException, SQLException {
+		int              batchSize  = database.fileEntryTable.getBatchSize();
+		List<FileEntry>  entries    = new ArrayList<>(batchSize);
+		byte[]           payload    = new byte[MAX_RECORD_SIZE];
+		CRC32            crc        = new CRC32();
+		long             numRecords = 0;
+		@Nullable String problem    = null;
+
+		while (true) {
+			long length;
+			try {
+				length = readVarLong(data);
+			} catch (EOFException ignored) {
+				problem = "Scan log is truncated after " + numRecords + " records";
+				break;
+			}
+
+			if (length == 0) {
+				// Mapped by the writer but never written
+				problem = "Scan log is truncated after " + numRecords + " records";
+				break;
+			} else if (length < 0 || length > MAX_RECORD_SIZE) {
+				problem = "Scan log is corrupt after " + numRecords + " records";
+				break;
+			}
+
+			try {
+				data.readFully(payload, 0, (int)length);
+				int checksum = data.readInt();
+
+				crc.reset();
+				crc.update(payload, 0, (int)length);
+				if ((int)crc.getValue() != checksum) {
+					problem = "Scan log is corrupt after " + numRecords + " records";
+					break;
+				}
+			} catch (EOFException ignored) {
+				problem = "Scan log is truncated after " + numRecords + " records";
+				break;
+			}
+
+			ByteBuffer record = ByteBuffer.wrap(payload, 0, (int)length);
+			try {
+				if (record.get(0) == TYPE_END) {
+					record.get();
+					long expectedRecords = getVarLong(record);
+					if (expectedRecords != numRecords) {
+						problem = "Scan log is corrupt: it ends after " + numRecords + " of " + expectedRecords +
+						          " records";
+					}
+
+					break;
+				}
+
+				loadRecord(record, database, entries);
+			} catch (BufferUnderflowException | IllegalArgumentException ex) {
+				problem = "Scan log has an invalid record after " + numRecords + " records: " + ex;
+				break;
+			}
+
+			numRecords++;
+
+			if (entries.size() >= batchSize) {
+				database.fileEntryTable.addValues(entries);
+				entries.clear();
+			}
+		}
+
+		database.fileEntryTable.addValues(entries);
+		return new LoadResult(numRecords, problem);
+	}
+
+	private static void loadRecord(ByteBuffer record, Database database, List<FileEntry> entries)
+			throws SQLException {
+		byte type = record.get();
+
+		if (type == TYPE_ENTRY) {
+			entries.add(readEntry(record, database));
+			return;
+		}
+
+		// Keep the log order
+		database.fileEntryTable.addValues(entries);
+		entries.clear();
+
+		if (type == TYPE_TOUCH_CHILDREN) {
+			database.fileEntryTable.touchChildren((int)getVarLong(record), getSignedVarLong(record));
+		} else if (type == TYPE_MARK_DELETED) {
+			database.fileEntryTable.markDeleted((int)getVarLong(record), getSignedVarLong(record));
+		} else if (type == TYPE_HASH) {
+			int    id              = (int)getVarLong(record);
+			long   contentHash     = record.getLong();
+			long   hashedTimestamp = getSignedVarLong(record);
+			byte[] strongHash      = new byte[(int)getVarLong(record)];
+			record.get(strongHash);
+
+			database.fileEntryTable.setHash(id,
+			                                contentHash,
+			                                strongHash.length == 0 ? null :
+			                                new String(strongHash, StandardCharsets.UTF_8),
+			                                hashedTimestamp);
+		} else {
+			throw new IllegalArgumentException("Unknown record type: " + type);
+		}
+	}
+
+	static void putEntry(ByteBuffer record, FileEntry entry) {
+		byte[] name = entry.name().getBytes(StandardCharsets.UTF_8);
+		if (name.length > MAX_NAME_LENGTH) {
+			throw new IllegalArgumentException("Name too long for the scan log: " + entry.name());
+		}
+
+		record.put(TYPE_ENTRY);
+		putVarLong(record, entry.id());
+		putVarLong(record, entry.parentID());
+		putVarLong(record, entry.volumeID());
+		putVarLong(record, entry.fileTypeID());
+		putVarLong(record, entry.size());
+		putSignedVarLong(record, entry.creationTimestamp());
+		putSignedVarLong(record, entry.modificationTimestamp());
+		putSignedVarLong(record, entry.accessTimestamp());
+		putSignedVarLong(record, entry.firstSeenTimestamp());
+		putSignedVarLong(record, entry.lastSeenTimestamp());
+		putVarLong(record, entry.deletedTimestamp());
+		putSignedVarLong(record, entry.inode());
+		putSignedVarLong(record, entry.device());
+		putVarLong(record, entry.linkCount());
+		putVarLong(record, name.length);
+		record.put(name);
+	}
+
+	static void putHash(ByteBuffer record,
+	                    int id,
+	                    long contentHash,
+	                    @Nullable String strongHash,
+	                    long hashedTimestamp) {
+		byte[] strongHashBytes = strongHash == null ? new byte[0] : strongHash.getBytes(StandardCharsets.UTF_8);
+
+		record.put(TYPE_HASH);
+		putVarLong(record, id);
+		record.putLong(contentHash);
+		putSignedVarLong(record, hashedTimestamp);
+		putVarLong(record, strongHashBytes.length);
+		record.put(strongHashBytes);
+	}
+
+	private static FileEntry readEntry(ByteBuffer record, Database database) {
+		int  id                    = (int)getVarLong(record);
+		int  parentID              = (int)getVarLong(record);
+		int  volumeID              = (int)getVarLong(record);
+		int  fileTypeID            = (int)getVarLong(record);
+		long size                  = getVarLong(record);
+		long creationTimestamp     = getSignedVarLong(record);
+		long modificationTimestamp = getSignedVarLong(record);
+		long accessTimestamp       = getSignedVarLong(record);
+		long firstSeenTimestamp    = getSignedVarLong(record);
+		long lastSeenTimestamp     = getSignedVarLong(record);
+		long deletedTimestamp      = getVarLong(record);
+		long inode                 = getSignedVarLong(record);
+		long device                = getSignedVarLong(record);
+		int  linkCount             = (int)getVarLong(record);
+		int  nameLength            = (int)getVarLong(record);
+
+		byte[] name = new byte[nameLength];
+		record.get(name);
+
+		return new FileEntry(database, id,
+		                     parentID,
+		                     new String(name, StandardCharsets.UTF_8),
+		                     volumeID,
+		                     fileTypeID,
+		                     size,
+		                     creationTimestamp,
+		                     modificationTimestamp,
+		                     accessTimestamp,
+		                     firstSeenTimestamp,
+		                     lastSeenTimestamp,
+		                     deletedTimestamp,
+		                     inode,
+		                     device,
+		                     linkCount,
+		                     0,
+		                     null,
+		                     0);
+	}
+
+	static void putVarLong(ByteBuffer buffer, long value) {
+		while ((value & ~0x7FL) != 0) {
+			buffer.put((byte)((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+
+		buffer.put((byte)value);
+	}
+
+	static void putSignedVarLong(ByteBuffer buffer, long value) {
+		putVarLong(buffer, (value << 1) ^ (value >> 63));
+	}
+
+	static long getVarLong(ByteBuffer buffer) {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			byte b = buffer.get();
+			value |= (long)(b & 0x7F) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+
+		throw new IllegalArgumentException("Varint too long");
+	}
+
+	static long getSignedVarLong(ByteBuffer buffer) {
+		long value = getVarLong(buffer);
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	private static long readVarLong(DataInputStream in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			byte b = in.readByte();
+			value |= (long)(b & 0x7F) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+
+		// Garbage, which the caller treats as corruption
+		return -1;
+	}
+}
@@ -0,0 +1,176 @@
+package org.digitalmodular.maruneko.diskscanner;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.jetbrains.annotations.Nullable;
+
+import static org.digitalmodular.utilities.ValidatorUtilities.requireNonNull;
+
+import org.digitalmodular.maruneko.database.FileEntry;
+import org.digitalmodular.maruneko.database.PendingDirectory;
+
+/**
+ * Appends to a {@link ScanLog} through a memory-mapped window that moves along the file. Space is mapped ahead in
+ * large chunks, which reads as zeroes until it's written. {@link #close()} cuts off what was mapped but not used.
+ * <p>
+ * Only {@link #finish()} writes the end record, so a log of a scan that failed or crashed reads as truncated.
+ * <p>
+ * The frontier is not logged, as the log doesn't need it to survive a crash.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+final class ScanLogWriter implements ScanSink {
+	private static final int CHUNK_SIZE = 64 << 20;
+
+	private final Path        file;
+	private final FileChannel channel;
+	private final ByteBuffer  record = ByteBuffer.allocate(ScanLog.MAX_RECORD_SIZE);
+	private final CRC32       crc    = new CRC32();
+
+	private @Nullable MappedByteBuffer buffer;
+	/**
+	 * The file position of the start of {@link #buffer}.
+	 */
+	private           long             bufferStart = 0;
+	private           long             numRecords  = 0;
+
+	ScanLogWriter(Path file) throws IOException {
+		this.file = requireNonNull(file, "file");
+
+		channel = FileChannel.open(file,
+		                           StandardOpenOption.CREATE,
+		                           StandardOpenOption.TRUNCATE_EXISTING,
+		                           StandardOpenOption.READ,
+		                           StandardOpenOption.WRITE);
+
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, CHUNK_SIZE);
+		buffer.put(ScanLog.MAGIC);
+	}
+
+	@Override
+	public void addEntries(List<FileEntry> entries) throws IOException {
+		for (FileEntry entry : entries) {
+			record.clear();
+			ScanLog.putEntry(record, entry);
+			append();
+		}
+	}
+
+	@Override
+	public void addPending(List<PendingDirectory> pending) {
+	}
+
+	@Override
+	public void removePending(int dirID) {
+	}
+
+	@Override
+	public void touchChildren(int parentID, long timestamp) throws IOException {
+		record.clear();
+		record.put(ScanLog.TYPE_TOUCH_CHILDREN);
+		ScanLog.putVarLong(record, parentID);
+		ScanLog.putSignedVarLong(record, timestamp);
+		append();
+	}
+
+	@Override
+	public void markDeleted(int id, long timestamp) throws IOException {
+		record.clear();
+		record.put(ScanLog.TYPE_MARK_DELETED);
+		ScanLog.putVarLong(record, id);
+		ScanLog.putSignedVarLong(record, timestamp);
+		append();
+	}
+
+	@Override
+	public void setHash(int id, long contentHash, @Nullable String strongHash, long hashedTimestamp)
+			throws IOException {
+		record.clear();
+		ScanLog.putHash(record, id, contentHash, strongHash, hashedTimestamp);
+		append();
+	}
+
+	/**
+	 * Appends the end record, with the number of records before it.
+	 */
+	@Override
+	public void finish() throws IOException {
+		record.clear();
+		record.put(ScanLog.TYPE_END);
+		ScanLog.putVarLong(record, numRecords);
+		append();
+	}
+
+	private void append() throws IOException {
+		record.flip();
+
+		crc.reset();
+		crc.update(record.array(), 0, record.limit());
+
+		MappedByteBuffer buffer = ensureRemaining(10 + record.limit() + 4);
+		ScanLog.putVarLong(buffer, record.limit());
+		buffer.put(record);
+		buffer.putInt((int)crc.getValue());
+		numRecords++;
+	}
+
+	private MappedByteBuffer ensureRemaining(int numBytes) throws IOException {
+		@Nullable MappedByteBuffer buffer = this.buffer;
+		if (buffer == null) {
+			throw new IOException("Scan log is closed: " + file);
+		}
+
+		if (buffer.remaining() >= numBytes) {
+			return buffer;
+		}
+
+		// A window can't be forced anymore after moving on
+		buffer.force();
+		bufferStart += buffer.position();
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, bufferStart, CHUNK_SIZE);
+		this.buffer = buffer;
+		return buffer;
+	}
+
+	@Override
+	public void commit() {
+		@Nullable MappedByteBuffer buffer = this.buffer;
+		if (buffer != null) {
+			buffer.force();
+		}
+	}
+
+	/**
+	 * Does nothing. Records are complete as soon as they're appended, and there's no frontier to keep consistent
+	 * with them.
+	 */
+	@Override
+	public void rollback() {
+	}
+
+	@Override
+	public void close() throws IOException {
+		@Nullable MappedByteBuffer buffer = this.buffer;
+		if (buffer == null) {
+			return;
+		}
+
+		try {
+			buffer.force();
+			long size = bufferStart + buffer.position();
+			this.buffer = null;
+
+			channel.truncate(size);
+		} finally {
+			channel.close();
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package org.digitalmodular.maruneko.diskscanner;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.jetbrains.annotations.Nullable;
+
+import org.digitalmodular.maruneko.database.FileEntry;
+import org.digitalmodular.maruneko.database.PendingDirectory;
+
+/**
+ * Where the {@link DatabaseWriter} puts what the walkers found. Only called from the writer thread, in queue order.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+interface ScanSink {
+	void addEntries(List<FileEntry> entries) throws IOException;
+
+	/**
+	 * Adds directories to the frontier. Their entries were added before.
+	 */
+	void addPending(List<PendingDirectory> pending) throws IOException;
+
+	void removePending(int dirID) throws IOException;
+
+	/**
+	 * See {@link org.digitalmodular.maruneko.database.FileEntryTable#touchChildren(int, long)}.
+	 */
+	void touchChildren(int parentID, long timestamp) throws IOException;
+
+	/**
+	 * See {@link org.digitalmodular.maruneko.database.FileEntryTable#markDeleted(int, long)}.
+	 */
+	void markDeleted(int id, long timestamp) throws IOException;
+
+	/**
+	 * See {@link org.digitalmodular.maruneko.database.FileEntryTable#setHash(int, long, String, long)}.
+	 */
+	void setHash(int id, long contentHash, @Nullable String strongHash, long hashedTimestamp) throws IOException;
+
+	/**
+	 * Marks the output as complete. Only called when everything was written, before the last {@link #commit()}.
+	 */
+	void finish() throws IOException;
+
+	/**
+	 * Makes everything so far survive a crash.
+	 */
+	void commit() throws IOException;
+
+	/**
+	 * Discards everything since the last commit, after a failure.
+	 */
+	void rollback() throws IOException;
+
+	/**
+	 * Releases resources, without committing.
+	 */
+	void close() throws IOException;
+}
@@ -0,0 +1,119 @@
+package org.digitalmodular.maruneko.diskscanner;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timings of each phase of a scan that {@link DiskScanner#setCollectStatistics(boolean) collects statistics}, to
+ * tell whether a scan is limited by the filesystem or by the writes. A {@link DiskScanner#setBenchmark(boolean)
+ * benchmark} collects the same without writing, as the baseline. Walker threads and the writer thread record into it
+ * concurrently.
+ * <p>
+ * The phases are:
+ * <ul>
+ * <li>stat: reading the attributes of one file</li>
+ * <li>opendir: opening a directory for listing</li>
+ * <li>write: handing one batch of queued operations to the sink</li>
+ * <li>commit: one commit of the sink</li>
+ * </ul>
+ * plus the depth of the writer queue, sampled once per batch. A queue that is mostly full means the writes are the
+ * bottleneck; a queue that is mostly empty means the walk is.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+public final class ScanStatistics {
+	private static final double[] PERCENTILES      = {0.5, 0.9, 0.99, 0.999};
+	private static final String[] PERCENTILE_NAMES = {"p50", "p90", "p99", "p99.9"};
+
+	private final LatencyHistogram statNanos    = new LatencyHistogram();
+	private final LatencyHistogram openDirNanos = new LatencyHistogram();
+	private final LatencyHistogram writeNanos   = new LatencyHistogram();
+	private final LatencyHistogram commitNanos  = new LatencyHistogram();
+	private final LatencyHistogram queueDepth   = new LatencyHistogram();
+
+	private final    long startNanos = System.nanoTime();
+	private volatile long stopNanos  = 0;
+
+	void recordStat(long nanos) {
+		statNanos.record(nanos);
+	}
+
+	void recordOpenDirectory(long nanos) {
+		openDirNanos.record(nanos);
+	}
+
+	void recordWrite(long nanos) {
+		writeNanos.record(nanos);
+	}
+
+	void recordCommit(long nanos) {
+		commitNanos.record(nanos);
+	}
+
+	void recordQueueDepth(int depth) {
+		queueDepth.record(depth);
+	}
+
+	void stop() {
+		stopNanos = System.nanoTime();
+	}
+
+	public long getElapsedNanos() {
+		long stopNanos = this.stopNanos;
+		return (stopNanos == 0 ? System.nanoTime() : stopNanos) - startNanos;
+	}
+
+	public long getNumStats() {
+		return statNanos.getCount();
+	}
+
+	public long getNumDirectories() {
+		return openDirNanos.getCount();
+	}
+
+	public double getStatsPerSecond() {
+		return getRate(statNanos.getCount());
+	}
+
+	public double getDirectoriesPerSecond() {
+		return getRate(openDirNanos.getCount());
+	}
+
+	private double getRate(long count) {
+		long elapsedNanos = getElapsedNanos();
+		return elapsedNanos == 0 ? 0 : count * (double)TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder report = new StringBuilder(1024);
+
+		report.append(String.format("Elapsed %.1f s, %.1f stats/sec, %.1f directories/sec%n",
+		                            getElapsedNanos() / 1.0e9,
+		                            getStatsPerSecond(),
+		                            getDirectoriesPerSecond()));
+
+		appendLatencies(report, "stat", statNanos);
+		appendLatencies(report, "opendir", openDirNanos);
+		appendLatencies(report, "write", writeNanos);
+		appendLatencies(report, "commit", commitNanos);
+
+		report.append(String.format("%-8s %10d samples", "queue", queueDepth.getCount()));
+		for (int i = 0; i < PERCENTILES.length; i++) {
+			report.append(String.format("  %-5s %8d", PERCENTILE_NAMES[i], queueDepth.getPercentile(PERCENTILES[i])));
+		}
+
+		report.append(String.format("  max %8d%n", queueDepth.getMax()));
+		return report.toString();
+	}
+
+	private static void appendLatencies(StringBuilder report, String phase, LatencyHistogram nanos) {
+		report.append(String.format("%-8s %10d calls  ", phase, nanos.getCount()));
+		for (int i = 0; i < PERCENTILES.length; i++) {
+			long nanosAtPercentile = nanos.getPercentile(PERCENTILES[i]);
+			report.append(String.format("  %-5s %8.1f us", PERCENTILE_NAMES[i], nanosAtPercentile / 1.0e3));
+		}
+
+		report.append(String.format("  max %8.1f us%n", nanos.getMax() / 1.0e3));
+	}
+}
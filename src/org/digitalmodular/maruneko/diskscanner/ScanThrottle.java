@@ -0,0 +1,173 @@
+package org.digitalmodular.maruneko.diskscanner;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.digitalmodular.utilities.ValidatorUtilities.requireAtLeast;
+
+/**
+ * Limits how hard a scan hits the disk, for scanning hosts that have other work to do. All walker threads share one
+ * throttle, and its settings can be changed from any thread while a scan is running.
+ * <p>
+ * Directory listings and stat calls are each capped with a token bucket that allows a burst of one second's worth.
+ * On top of that, when a target stat latency is set, the walkers back off while the (smoothed) observed latency is
+ * above it, by pausing after each stat call so the disk is only busy with the scan part of the time. The busy part
+ * halves every {@value #ADJUST_MILLIS} ms that the latency is too high, and slowly recovers when it isn't.
+ * <p>
+ * A new throttle has no limits, and then costs a few volatile reads per file.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+public final class ScanThrottle {
+	private static final int    ADJUST_MILLIS     = 100;
+	private static final double MIN_BUSY_FACTOR   = 1 / 64.0;
+	private static final double RECOVERY_STEP     = 0.05;
+	private static final int    LATENCY_SMOOTHING = 16;
+
+	private volatile int  directoriesPerSecond = 0;
+	private volatile int  statsPerSecond       = 0;
+	private volatile long targetLatencyMicros  = 0;
+
+	private final TokenBucket directoryBucket = new TokenBucket();
+	private final TokenBucket statBucket      = new TokenBucket();
+
+	// Guarded by this
+	private double smoothedLatencyNanos = 0;
+	private long   lastAdjustNanos      = System.nanoTime();
+
+	private volatile double busyFactor = 1;
+
+	public int getDirectoriesPerSecond() {
+		return directoriesPerSecond;
+	}
+
+	/**
+	 * Sets the maximum number of directories listed per second, or 0 for no limit.
+	 */
+	public void setDirectoriesPerSecond(int directoriesPerSecond) {
+		this.directoriesPerSecond = requireAtLeast(0, directoriesPerSecond, "directoriesPerSecond");
+	}
+
+	public int getStatsPerSecond() {
+		return statsPerSecond;
+	}
+
+	/**
+	 * Sets the maximum number of files of which the attributes are read per second, or 0 for no limit.
+	 */
+	public void setStatsPerSecond(int statsPerSecond) {
+		this.statsPerSecond = requireAtLeast(0, statsPerSecond, "statsPerSecond");
+	}
+
+	public long getTargetLatencyMicros() {
+		return targetLatencyMicros;
+	}
+
+	/**
+	 * Sets the stat latency above which the scan backs off, or 0 to never back off.
+	 */
+	public void setTargetLatencyMicros(long targetLatencyMicros) {
+		this.targetLatencyMicros = requireAtLeast(0, targetLatencyMicros, "targetLatencyMicros");
+		if (targetLatencyMicros == 0) {
+			busyFactor = 1;
+		}
+	}
+
+	/**
+	 * @return the fraction of the time the walkers currently may keep the disk busy, from 1 down to 1/64.
+	 */
+	public double getBusyFactor() {
+		return busyFactor;
+	}
+
+	/**
+	 * Blocks until a directory may be listed.
+	 */
+	void acquireDirectory() throws InterruptedIOException {
+		directoryBucket.acquire(directoriesPerSecond);
+	}
+
+	/**
+	 * Blocks until the attributes of a file may be read.
+	 */
+	void acquireStat() throws InterruptedIOException {
+		statBucket.acquire(statsPerSecond);
+	}
+
+	/**
+	 * Records how long a stat call took, and pauses when the scan is backing off.
+	 */
+	void recordStat(long latencyNanos) throws InterruptedIOException {
+		if (targetLatencyMicros == 0) {
+			return;
+		}
+
+		adjust(latencyNanos);
+
+		// Spend (1 - busyFactor) of the time idle
+		double factor = busyFactor;
+		if (factor < 1) {
+			sleep((long)(latencyNanos * (1 - factor) / factor));
+		}
+	}
+
+	private synchronized void adjust(long latencyNanos) {
+		smoothedLatencyNanos += (latencyNanos - smoothedLatencyNanos) / LATENCY_SMOOTHING;
+
+		long now = System.nanoTime();
+		if (now - lastAdjustNanos < TimeUnit.MILLISECONDS.toNanos(ADJUST_MILLIS)) {
+			return;
+		}
+
+		lastAdjustNanos = now;
+
+		if (smoothedLatencyNanos > TimeUnit.MICROSECONDS.toNanos(targetLatencyMicros)) {
+			busyFactor = Math.max(MIN_BUSY_FACTOR, busyFactor / 2);
+		} else {
+			busyFactor = Math.min(1, busyFactor + RECOVERY_STEP);
+		}
+	}
+
+	private static void sleep(long nanos) throws InterruptedIOException {
+		if (nanos <= 0) {
+			return;
+		}
+
+		try {
+			TimeUnit.NANOSECONDS.sleep(nanos);
+		} catch (InterruptedException ignored) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while throttled");
+		}
+	}
+
+	/**
+	 * Hands out tokens at a fixed rate. Each caller reserves the next free token and then sleeps until it's due, so
+	 * waiting callers don't hold the lock.
+	 */
+	private static final class TokenBucket {
+		private static final long BURST_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+		private long nextFreeNanos = System.nanoTime();
+
+		void acquire(int perSecond) throws InterruptedIOException {
+			if (perSecond == 0) {
+				return;
+			}
+
+			sleep(reserve(perSecond));
+		}
+
+		private synchronized long reserve(int perSecond) {
+			long now = System.nanoTime();
+
+			// Unused tokens are kept for at most a burst's worth
+			nextFreeNanos = Math.max(nextFreeNanos, now - BURST_NANOS);
+
+			long waitNanos = nextFreeNanos - now;
+			nextFreeNanos += BURST_NANOS / perSecond;
+			return waitNanos;
+		}
+	}
+}
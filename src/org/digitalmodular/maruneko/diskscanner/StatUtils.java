@@ -30,6 +30,12 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
 
 import org.digitalmodular.utilities.annotation.UtilityClass;
 
@@ -39,38 +45,81 @@ import org.digitalmodular.utilities.annotation.UtilityClass;
 // Created 2012-11-15
 @UtilityClass
 public final class StatUtils {
+	/**
+	 * The longest {@link #getUsedInodeCount(Path)} waits for {@code stat}, e.g. on a network filesystem that doesn't
+	 * respond.
+	 */
+	private static final long STAT_TIMEOUT_SECONDS = 5;
+
+	/**
+	 * Returns the number of hard links to a file, read with the {@code unix:nlink} attribute instead of running
+	 * {@code stat}. Returns 1 when the filesystem has no {@code unix} view or the file can't be read.
+	 * <p>
+	 * The scanner already stores this in {@link org.digitalmodular.maruneko.database.FileEntry#linkCount()}.
+	 */
 	public static int getHardLinkCount(String filePath) {
-		Process        process = null;
-		BufferedReader in      = null;
+		return getHardLinkCount(Paths.get(filePath));
+	}
+
+	public static int getHardLinkCount(Path file) {
+		if (!ScanAttributes.hasUnixView(file)) {
+			return 1;
+		}
+
+		try {
+			return (Integer)Files.getAttribute(file, "unix:nlink", LinkOption.NOFOLLOW_LINKS);
+		} catch (IOException | UnsupportedOperationException ignored) {
+			return 1;
+		}
+	}
+
+	/**
+	 * Returns the number of inodes in use on the filesystem a file is on, by running {@code stat -f}, as the
+	 * {@link java.nio.file.FileStore} doesn't have it. This is best-effort: it returns 0 when this is unknown, which
+	 * includes filesystems that allocate inodes on the fly and report none, and other platforms than Linux, where
+	 * {@code stat} takes different options and isn't run at all.
+	 */
+	public static long getUsedInodeCount(Path file) {
+		if (!System.getProperty("os.name", "").toLowerCase(Locale.ROOT).startsWith("linux")) {
+			return 0;
+		}
+
+		Process process = null;
 		try {
-			process = Runtime.getRuntime().exec(new String[]{"stat", "--printf=%h", '"' + filePath + '"'});
+			process = new ProcessBuilder("stat", "-f", "-c", "%c %d", file.toString())
+					.redirectErrorStream(true)
+					.start();
 
-			int exitValue = process.waitFor();
-			if (exitValue != 0) {
-				return 1;
+			// The output is a single line, which fits in the pipe, so it can be read afterwards
+			if (!process.waitFor(STAT_TIMEOUT_SECONDS, TimeUnit.SECONDS) || process.exitValue() != 0) {
+				return 0;
 			}
 
-			in = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
-			String inpMsg = in.readLine();
-			if (inpMsg == null) {
-				return 1;
+			String output;
+			try (BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream(),
+			                                                                  StandardCharsets.UTF_8))) {
+				output = in.readLine();
 			}
 
-			return Integer.parseInt(inpMsg);
-		} catch (NumberFormatException | InterruptedException | IOException ignored) {
-			return 1;
+			if (output == null) {
+				return 0;
+			}
+
+			String[] counts = output.trim().split(" ");
+			if (counts.length != 2) {
+				return 0;
+			}
+
+			return Math.max(0, Long.parseLong(counts[0]) - Long.parseLong(counts[1]));
+		} catch (InterruptedException ignored) {
+			Thread.currentThread().interrupt();
+			return 0;
+		} catch (NumberFormatException | IOException | SecurityException ignored) {
+			return 0;
 		} finally {
 			if (process != null) {
 				process.destroy();
 			}
-
-			if (in != null) {
-				try {
-					in.close();
-				} catch (IOException ex) {
-					ex.printStackTrace();
-				}
-			}
 		}
 	}
 }
@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.nio.file.FileStore;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.time.Clock;
 import java.time.ZonedDateTime;
@@ -26,6 +27,18 @@ public final class VolumeUtilities {
 		throw new AssertionError();
 	}
 
+	/**
+	 * Returns a key that identifies the device a file is on, without looking up its {@link FileStore}. This is the
+	 * {@code unix:dev} attribute where supported, and only elsewhere the (more expensive) {@code FileStore}.
+	 */
+	public static Object getDeviceKey(Path file) throws IOException {
+		if (file.getFileSystem().supportedFileAttributeViews().contains("unix")) {
+			return Files.getAttribute(file, "unix:dev", LinkOption.NOFOLLOW_LINKS);
+		}
+
+		return Files.getFileStore(file);
+	}
+
 	public static Volume getVolume(Path file) throws IOException {
 		file = file.toAbsolutePath();
 
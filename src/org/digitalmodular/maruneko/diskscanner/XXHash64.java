@@ -0,0 +1,141 @@
+package org.digitalmodular.maruneko.diskscanner;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Streaming implementation of the 64-bit xxHash, a fast non-cryptographic hash. The result is the same as the
+ * reference implementation's {@code XXH64()} over the concatenation of everything passed to {@link #update}.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+final class XXHash64 {
+	private static final long PRIME1 = 0x9E3779B185EBCA87L;
+	private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+	private static final long PRIME3 = 0x165667B19E3779F9L;
+	private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+	private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+	private static final int STRIPE_SIZE = 32;
+
+	private final long seed;
+
+	private long v1;
+	private long v2;
+	private long v3;
+	private long v4;
+	private long totalLength = 0;
+
+	/**
+	 * The start of a stripe that didn't fit in the last update.
+	 */
+	private final ByteBuffer partial = ByteBuffer.allocate(STRIPE_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+	XXHash64() {
+		this(0);
+	}
+
+	XXHash64(long seed) {
+		this.seed = seed;
+		reset();
+	}
+
+	void reset() {
+		v1 = seed + PRIME1 + PRIME2;
+		v2 = seed + PRIME2;
+		v3 = seed;
+		v4 = seed - PRIME1;
+
+		totalLength = 0;
+		partial.clear();
+	}
+
+	/**
+	 * Hashes the remaining bytes of a buffer, leaving its position at its limit. The byte order of the buffer is set
+	 * to little-endian.
+	 */
+	void update(ByteBuffer data) {
+		data.order(ByteOrder.LITTLE_ENDIAN);
+		totalLength += data.remaining();
+
+		if (partial.position() > 0) {
+			while (partial.hasRemaining() && data.hasRemaining()) {
+				partial.put(data.get());
+			}
+
+			if (partial.hasRemaining()) {
+				return;
+			}
+
+			partial.flip();
+			processStripe(partial);
+			partial.clear();
+		}
+
+		while (data.remaining() >= STRIPE_SIZE) {
+			processStripe(data);
+		}
+
+		partial.put(data);
+	}
+
+	private void processStripe(ByteBuffer data) {
+		v1 = round(v1, data.getLong());
+		v2 = round(v2, data.getLong());
+		v3 = round(v3, data.getLong());
+		v4 = round(v4, data.getLong());
+	}
+
+	/**
+	 * @return the hash of everything so far. Hashing can continue after this.
+	 */
+	long getValue() {
+		long hash;
+		if (totalLength >= STRIPE_SIZE) {
+			hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+			hash = mergeRound(hash, v1);
+			hash = mergeRound(hash, v2);
+			hash = mergeRound(hash, v3);
+			hash = mergeRound(hash, v4);
+		} else {
+			hash = seed + PRIME5;
+		}
+
+		hash += totalLength;
+
+		ByteBuffer tail = partial.duplicate().order(ByteOrder.LITTLE_ENDIAN).flip();
+		while (tail.remaining() >= 8) {
+			hash ^= round(0, tail.getLong());
+			hash = Long.rotateLeft(hash, 27) * PRIME1 + PRIME4;
+		}
+
+		if (tail.remaining() >= 4) {
+			hash ^= (tail.getInt() & 0xFFFFFFFFL) * PRIME1;
+			hash = Long.rotateLeft(hash, 23) * PRIME2 + PRIME3;
+		}
+
+		while (tail.hasRemaining()) {
+			hash ^= (tail.get() & 0xFFL) * PRIME5;
+			hash = Long.rotateLeft(hash, 11) * PRIME1;
+		}
+
+		hash ^= hash >>> 33;
+		hash *= PRIME2;
+		hash ^= hash >>> 29;
+		hash *= PRIME3;
+		hash ^= hash >>> 32;
+		return hash;
+	}
+
+	private static long round(long accumulator, long input) {
+		accumulator += input * PRIME2;
+		accumulator = Long.rotateLeft(accumulator, 31);
+		return accumulator * PRIME1;
+	}
+
+	private static long mergeRound(long hash, long accumulator) {
+		hash ^= round(0, accumulator);
+		return hash * PRIME1 + PRIME4;
+	}
+}
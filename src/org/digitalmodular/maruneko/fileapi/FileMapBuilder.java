@@ -5,11 +5,14 @@ import java.util.List;
 
 import org.jetbrains.annotations.Nullable;
 
+import static org.digitalmodular.utilities.ValidatorUtilities.requireAtLeast;
 import static org.digitalmodular.utilities.ValidatorUtilities.requireNonNull;
 
 import org.digitalmodular.maruneko.dataView.FileNode;
 import org.digitalmodular.maruneko.database.Database;
+import org.digitalmodular.maruneko.database.DirectoryAggregate;
 import org.digitalmodular.maruneko.database.FileEntry;
+import org.digitalmodular.maruneko.database.FileType;
 import org.digitalmodular.maruneko.database.Volume;
 import org.digitalmodular.maruneko.diskscanner.ProgressTracker;
 
@@ -33,6 +36,18 @@ public class FileMapBuilder {
 		return buildFrom(firstEntry);
 	}
 
+	/**
+	 * Builds the top levels of the tree, see {@link #buildFrom(FileEntry, int)}.
+	 */
+	public @Nullable FileNode buildFileMap(int maxDepth) throws SQLException {
+		@Nullable FileEntry firstEntry = database.fileEntryTable.getByID(1);
+		if (firstEntry == null) {
+			return null;
+		}
+
+		return buildFrom(firstEntry, maxDepth);
+	}
+
 	public FileNode buildFrom(FileEntry start) throws SQLException {
 		requireNonNull(start, "start");
 
@@ -41,13 +56,99 @@ public class FileMapBuilder {
 		FileNode root = new FileNode(volume, start, null);
 
 		ProgressTracker progressTracker = new ProgressTracker();
-		progressTracker.setTotalSizeTarget(database.fileEntryTable.getMaxID());
+		progressTracker.setNumFilesTarget(database.fileEntryTable.getMaxID());
 
 		addChildren(volume, root, start, progressTracker);
 
 		return root;
 	}
 
+	/**
+	 * Builds only the top levels of the tree, with the totals of each directory read from the catalog instead of
+	 * counted from everything below it. This takes a few queries per directory shown, regardless of the size of the
+	 * catalog. Deleted entries are left out, as they are from the totals.
+	 * <p>
+	 * Directories of which the totals weren't computed yet (since the last scan) are built completely. The levels
+	 * below the others can be loaded later with {@link #expand(FileNode, int)}.
+	 *
+	 * @param maxDepth The number of levels below {@code start} to build
+	 */
+	public FileNode buildFrom(FileEntry start, int maxDepth) throws SQLException {
+		requireNonNull(start, "start");
+		requireAtLeast(0, maxDepth, "maxDepth");
+
+		@Nullable DirectoryAggregate aggregate = database.directoryAggregateTable.getByID(start.id());
+		if (aggregate == null) {
+			return buildFrom(start);
+		}
+
+		Volume volume = database.volumeTable.getByID(start.volumeID());
+
+		FileNode root = new FileNode(volume, start, null, aggregate);
+
+		addSummarizedChildren(volume, root, start, maxDepth, new ProgressTracker());
+
+		return root;
+	}
+
+	/**
+	 * Loads the levels below a node that {@link #buildFrom(FileEntry, int)} left out, down to {@code maxDepth} levels
+	 * below it. Levels that are already there aren't loaded again.
+	 */
+	public void expand(FileNode node, int maxDepth) throws SQLException {
+		requireNonNull(node, "node");
+		requireAtLeast(0, maxDepth, "maxDepth");
+
+		expand(node, maxDepth, new ProgressTracker());
+	}
+
+	private void expand(FileNode node, int maxDepth, ProgressTracker progressTracker) throws SQLException {
+		if (maxDepth == 0 || !node.isSummarized()) {
+			// Nodes that weren't summarized were built completely
+			return;
+		}
+
+		if (node.hasUnloadedChildren()) {
+			addSummarizedChildren(node.getVolume(), node, node.getFileEntry(), maxDepth, progressTracker);
+			return;
+		}
+
+		for (FileNode child : node.getChildren()) {
+			expand(child, maxDepth - 1, progressTracker);
+		}
+	}
+
+	private void addSummarizedChildren(Volume volume,
+	                                   FileNode parentNode,
+	                                   FileEntry parentEntry,
+	                                   int maxDepth,
+	                                   ProgressTracker progressTracker) throws SQLException {
+		if (maxDepth == 0) {
+			return;
+		}
+
+		List<FileEntry> children = database.fileEntryTable.getByParentID(parentEntry.id());
+
+		for (FileEntry childEntry : children) {
+			@Nullable DirectoryAggregate aggregate = null;
+			if (childEntry.fileTypeID() == FileType.DIRECTORY.id()) {
+				aggregate = database.directoryAggregateTable.getByID(childEntry.id());
+			}
+
+			if (aggregate == null) {
+				FileNode childNode = new FileNode(volume, childEntry, parentNode);
+				parentNode.addChild(childNode);
+
+				addChildren(volume, childNode, childEntry, progressTracker);
+			} else {
+				FileNode childNode = new FileNode(volume, childEntry, parentNode, aggregate);
+				parentNode.addChild(childNode);
+
+				addSummarizedChildren(volume, childNode, childEntry, maxDepth - 1, progressTracker);
+			}
+		}
+	}
+
 	private void addChildren(Volume volume, FileNode parentNode, FileEntry parentEntry, ProgressTracker progressTracker)
 			throws SQLException {
 
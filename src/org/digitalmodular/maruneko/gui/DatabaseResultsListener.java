@@ -1,7 +1,6 @@
 package org.digitalmodular.maruneko.gui;
 
 import java.nio.file.Path;
-import java.util.List;
 
 import org.digitalmodular.maruneko.database.FileEntry;
 
@@ -16,5 +15,5 @@ public interface DatabaseResultsListener {
 
 	void databaseClosed(Path file);
 
-	void offerSearchResult(List<FileEntry> fileTree);
+	void offerSearchResult(FileEntry entry, String fullPath);
 }
@@ -380,23 +380,8 @@ public class MaruNekoSearchPanel extends JPanel implements DatabaseResultsListen
 	}
 
 	@Override
-	public void offerSearchResult(List<FileEntry> fileTree) {
-		StringBuilder path = new StringBuilder(512);
-
-		for (int i = fileTree.size() - 1; i >= 0; i--) {
-			FileEntry entry = fileTree.get(i);
-			String    name  = entry.name();
-
-			if (!path.isEmpty() && !name.startsWith("/") && path.charAt(path.length() - 1) != '/') {
-				path.append('/');
-			}
-
-			path.append(name);
-		}
-
-		FileEntry entry = fileTree.get(0);
-
-		String name = path.toString();
+	public void offerSearchResult(FileEntry entry, String fullPath) {
+		String name = fullPath;
 		if (name.startsWith("/media/zom-b/")) {
 			name = '/' + name.substring(12);
 		}
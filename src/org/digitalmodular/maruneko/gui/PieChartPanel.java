@@ -18,6 +18,7 @@ import java.awt.event.MouseMotionListener;
 import java.awt.geom.Arc2D;
 import java.io.IOException;
 import java.nio.file.Paths;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -137,6 +138,7 @@ public class PieChartPanel extends JPanel implements MouseListener, MouseMotionL
 	public void setRoot(FileNode root) {
 		this.root = root;
 
+		loadShells();
 		refreshTree();
 	}
 
@@ -163,6 +165,7 @@ public class PieChartPanel extends JPanel implements MouseListener, MouseMotionL
 		this.numShells = requireAtLeast(1, numShells, "depth");
 		System.out.println("numShells=" + numShells);
 
+		loadShells();
 		refreshTree();
 	}
 
@@ -190,6 +193,20 @@ public class PieChartPanel extends JPanel implements MouseListener, MouseMotionL
 
 	}
 
+	/**
+	 * Loads what the shells show when the tree is only partially loaded. That is one level more than the shells, as
+	 * the outer shell is sized and sorted by the number of children too.
+	 */
+	private void loadShells() {
+		if (root != null) {
+			try {
+				fileData.expand(root, numShells + 1);
+			} catch (SQLException ex) {
+				throw new RuntimeException(ex);
+			}
+		}
+	}
+
 	private void refreshTree() {
 		if (root != null) {
 			sortTree(root, 1);